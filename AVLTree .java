@@ -1,3 +1,44 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
  /*
  * AVLTree
@@ -12,11 +53,27 @@ public class AVLTree {
     AVLNode root;
     AVLNode min = null; // The node with the minimum key
     AVLNode max = null; // The node with the maximum key
+    Monoid<Object> monoid = null; // The augmentation of the tree, null if the tree isn't augmented
+    SearchCache cache = null; // The front cache of search, null if it's disabled
+    OpTrace trace = null; // The trace that records the operations of the tree, null if recording is disabled
+    int traceId; // The id of the tree in the trace
 
     public AVLTree() {
         this.root = new AVLNode();
     }
 
+    /**
+     * public AVLTree(Monoid<?> monoid)
+     * <p>
+     * Creates an empty tree in which every node also keeps the aggregate (according to monoid)
+     * of the items in its sub-tree. The aggregates are used by aggregate(lo, hi).
+     */
+    @SuppressWarnings("unchecked")
+    public AVLTree(Monoid<?> monoid) {
+        this.root = new AVLNode();
+        this.monoid = (Monoid<Object>) monoid;
+    }
+
     /**
      * private AVLTree(AVLNode root)
      * <p>
@@ -48,7 +105,53 @@ public class AVLTree {
      * otherwise, returns null.
      */
     public String search(int k) {
-        return searchRec(this.root, k);  
+        if(this.trace != null)
+            this.trace.treeSearch(this, k);
+        if(this.cache == null)
+            return searchRec(this.root, k);
+        AVLNode x = this.cache.get(k);
+        if(x == null) {
+            x = this.root;
+            while(x.isRealNode() && x.key != k)
+                x = k < x.key ? x.left : x.right;
+            if(!x.isRealNode())
+                return null;
+            this.cache.admit(k, x);
+        }
+        return x.getValue();
+    }
+
+    /**
+     * public SearchCache enableSearchCache(int capacity)
+     * <p>
+     * Puts a front cache of about capacity keys in front of search (see SearchCache), and returns it
+     * so its statistics can be read. The cache is kept correct by delete, split and join.
+     */
+    public SearchCache enableSearchCache(int capacity) {
+        this.cache = new SearchCache(capacity);
+        return this.cache;
+    }
+
+    /**
+     * public void disableSearchCache()
+     * <p>
+     * Removes the front cache of search.
+     */
+    public void disableSearchCache() {
+        this.cache = null;
+    }
+
+    /**
+     * public void setTrace(OpTrace trace)
+     * <p>
+     * Starts recording insert, delete, search, split and join in trace (the current items are recorded as inserts),
+     * or stops recording if trace is null. The trees made by split keep recording into the same trace.
+     */
+    public void setTrace(OpTrace trace) {
+        if(trace == null)
+            this.trace = null;
+        else if(trace != this.trace)
+            trace.addTree(this);
     }
 
     /**
@@ -119,6 +222,9 @@ public class AVLTree {
         //Update sizes
         x.setSize(((AVLNode)x.getLeft()).getSize()+((AVLNode)x.getRight()).getSize() + 1);
         y.setSize(((AVLNode)y.getLeft()).getSize()+((AVLNode)y.getRight()).getSize() + 1);
+        //Update aggregates
+        updateAggregate(x);
+        updateAggregate(y);
     }
     /**
      * public int RotateLeft(AVLNode y)
@@ -152,6 +258,9 @@ public class AVLTree {
         //Update sizes
         y.setSize(((AVLNode)y.getLeft()).getSize()+((AVLNode)y.getRight()).getSize() + 1);
         x.setSize(((AVLNode)x.getLeft()).getSize()+((AVLNode)x.getRight()).getSize() + 1);
+        //Update aggregates
+        updateAggregate(y);
+        updateAggregate(x);
     }
     /**
      * protected void rebalance(AVLNode x)
@@ -214,11 +323,12 @@ public class AVLTree {
      */
     
     public int insert(int k, String i) {
-        
+        if(this.trace != null)
+            this.trace.treeInsert(this, k, i);
         AVLNode toInsert = new AVLNode(k, i);
         return insert(toInsert);
     }
-    private int insert(AVLNode toInsert)
+    protected int insert(AVLNode toInsert)
     {
     	boolean wasInserted = false;
         if(empty())
@@ -227,6 +337,7 @@ public class AVLTree {
             this.min = this.root; // update min field
             this.max = this.root; // update max field
             this.root.setSize(1); // update size
+            updateAggregate(this.root); // update aggregate
             return 0;
         }
         else
@@ -307,12 +418,26 @@ public class AVLTree {
      * Returns -1 if an item with key k was not found in the tree.
      */
     public int delete(int k) {
-        AVLNode rebalance_start;
+        if(this.trace != null)
+            this.trace.treeDelete(this, k);
         AVLNode to_delete=treePosition(k,this.root);
         if(!to_delete.isRealNode())
             return -1;
         if(to_delete.getKey() != k) // the node doesnt exist
             return -1;
+        return delete(to_delete);
+    }
+
+    /**
+     * protected int delete(AVLNode to_delete)
+     * <p>
+     * Deletes the node from the tree, like delete(int k) once the node was found.
+     * precondition: to_delete is a real node of the tree
+     */
+    protected int delete(AVLNode to_delete) {
+        AVLNode rebalance_start;
+        if(this.cache != null)
+            this.cache.invalidate(to_delete.getKey());
         if(size()==1) // deleting the last node
         {
             this.root= new AVLNode();
@@ -437,7 +562,7 @@ public class AVLTree {
     public String min() {
         if (!this.root.isRealNode())
             return null;
-        return this.min.value;
+        return this.min.getValue();
     }
     /**
      * protected AVLNode minNode(AVLNode x)
@@ -520,6 +645,191 @@ public class AVLTree {
         }
     }
 
+    /**
+     * public void toArrays(int[] keys, String[] values)
+     * <p>
+     * Fills keys and values with the keys and the info of the tree, sorted by key, in one pass.
+     * Either array may be null, then it isn't filled.
+     * precondition: the arrays have at least size() elements
+     */
+    public void toArrays(int[] keys, String[] values) {
+        exportRec(this.root, 0, keys, values);
+    }
+
+    /**
+     * public void toArraysParallel(int[] keys, String[] values)
+     * <p>
+     * Like toArrays, but big sub-trees are exported in parallel in the common ForkJoinPool.
+     * The size of a left sub-tree gives the offset of its parent and of the right sub-tree,
+     * so every task writes straight into its own region of the arrays.
+     * precondition: the arrays have at least size() elements
+     */
+    public void toArraysParallel(int[] keys, String[] values) {
+        if(size() <= ExportTask.SEQUENTIAL_SIZE)
+            toArrays(keys, values);
+        else
+            ForkJoinPool.commonPool().invoke(new ExportTask(this.root, 0, keys, values));
+    }
+
+    /**
+     * public int[] keysToArrayParallel()
+     * <p>
+     * Like keysToArray, using toArraysParallel.
+     */
+    public int[] keysToArrayParallel() {
+        int[] keysArr = new int[this.size()];
+        toArraysParallel(keysArr, null);
+        return keysArr;
+    }
+
+    /**
+     * public String[] infoToArrayParallel()
+     * <p>
+     * Like infoToArray, using toArraysParallel.
+     */
+    public String[] infoToArrayParallel() {
+        String[] infoArr = new String[this.size()];
+        toArraysParallel(null, infoArr);
+        return infoArr;
+    }
+
+    /**
+     * public static AVLTree bulkBuild(int[] keys, String[] values, Monoid<?> monoid)
+     * <p>
+     * Builds a tree of the items (keys[i], values[i]) given in any order, faster than inserting them one by one.
+     * When a key repeats, the first of its items is kept, like with repeated inserts.
+     * The items are sorted with Arrays.parallelSort (the keys are packed with their indexes into longs, so
+     * the values are carried along), and the balanced tree is built bottom-up with sub-trees as ForkJoin tasks,
+     * with the heights, sizes (and aggregates, if monoid isn't null) of the nodes set on the way.
+     * The arrays aren't changed.
+     * precondition: keys[i] >= 0, values.length == keys.length
+     * Time Complexity: O(n log n) work, O(n) for sorted input
+     */
+    public static AVLTree bulkBuild(int[] keys, String[] values, Monoid<?> monoid) {
+        if(values.length != keys.length)
+            throw new IllegalArgumentException("keys and values must have the same length");
+        int n = keys.length;
+        long[] packed = new long[n];
+        Arrays.parallelSetAll(packed, i -> {
+            if(keys[i] < 0)
+                throw new IllegalArgumentException("keys must be non-negative");
+            return (long) keys[i] << 32 | i;
+        });
+        Arrays.parallelSort(packed);
+        int count = 0;
+        for(int i = 0; i < n; i++) // keep the first item of every key
+            if(i == 0 || (packed[i] >>> 32) != (packed[count - 1] >>> 32))
+                packed[count++] = packed[i];
+        AVLTree t = monoid == null ? new AVLTree() : new AVLTree(monoid);
+        if(count == 0)
+            return t;
+        t.root = ForkJoinPool.commonPool().invoke(new BuildTask(t, packed, values, 0, count - 1));
+        t.min = t.minNode(t.root);
+        t.max = t.maxNode(t.root);
+        return t;
+    }
+
+    /**
+     * private static class BuildTask
+     * <p>
+     * Builds a balanced sub-tree of the sorted items packed[from..to], forking its two sub-trees while they are big.
+     */
+    private static class BuildTask extends RecursiveTask<AVLNode> {
+        private static final long serialVersionUID = 1L;
+        private final transient AVLTree tree;
+        private final long[] packed;
+        private final String[] values;
+        private final int from, to;
+
+        BuildTask(AVLTree tree, long[] packed, String[] values, int from, int to) {
+            this.tree = tree;
+            this.packed = packed;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected AVLNode compute() {
+            if(this.to - this.from < ExportTask.SEQUENTIAL_SIZE)
+                return build(this.from, this.to);
+            int mid = (this.from + this.to) >>> 1;
+            BuildTask left = new BuildTask(this.tree, this.packed, this.values, this.from, mid - 1);
+            BuildTask right = new BuildTask(this.tree, this.packed, this.values, mid + 1, this.to);
+            invokeAll(left, right);
+            return node(mid, left.join(), right.join());
+        }
+
+        private AVLNode build(int from, int to) {
+            if(from > to)
+                return new AVLNode();
+            int mid = (from + to) >>> 1;
+            return node(mid, build(from, mid - 1), build(mid + 1, to));
+        }
+
+        private AVLNode node(int i, AVLNode left, AVLNode right) {
+            AVLNode x = new AVLNode((int) (this.packed[i] >>> 32), this.values[(int) this.packed[i]]);
+            x.setLeft(left);
+            x.setRight(right);
+            x.setHeight(Math.max(left.getHeight(), right.getHeight()) + 1);
+            x.setSize(left.getSize() + right.getSize() + 1);
+            this.tree.updateAggregate(x);
+            return x;
+        }
+    }
+
+    /**
+     * private static void exportRec(AVLNode x, int offset, int[] keys, String[] values)
+     * <p>
+     * Writes the sub-tree of x to the arrays from index offset.
+     */
+    private static void exportRec(AVLNode x, int offset, int[] keys, String[] values) {
+        while(x.isRealNode()) { // loop on the right sub-tree
+            int i = offset + x.left.getSize();
+            exportRec(x.left, offset, keys, values);
+            if(keys != null)
+                keys[i] = x.getKey();
+            if(values != null)
+                values[i] = x.getValue();
+            offset = i + 1;
+            x = x.right;
+        }
+    }
+
+    /**
+     * private static class ExportTask
+     * <p>
+     * Exports a sub-tree, forking its two sub-trees while they are big.
+     */
+    private static class ExportTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        static final int SEQUENTIAL_SIZE = 1 << 13;
+        private final transient AVLNode x;
+        private final int offset;
+        private final int[] keys;
+        private final String[] values;
+
+        ExportTask(AVLNode x, int offset, int[] keys, String[] values) {
+            this.x = x;
+            this.offset = offset;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        protected void compute() {
+            if(this.x.getSize() <= SEQUENTIAL_SIZE) {
+                exportRec(this.x, this.offset, this.keys, this.values);
+                return;
+            }
+            int i = this.offset + this.x.left.getSize();
+            if(this.keys != null)
+                this.keys[i] = this.x.getKey();
+            if(this.values != null)
+                this.values[i] = this.x.getValue();
+            invokeAll(new ExportTask(this.x.left, this.offset, this.keys, this.values),
+                    new ExportTask(this.x.right, i + 1, this.keys, this.values));
+        }
+    }
+
     /**
      * public int size()
      * <p>
@@ -550,13 +860,27 @@ public class AVLTree {
      * postcondition: none
      */
     public AVLTree[] split(int x) {
+        AVLTree[] result = splitTree(x);
+        if(this.trace != null)
+            this.trace.treeSplit(this, x, result);
+        return result;
+    }
+
+    /**
+     * private AVLTree[] splitTree(int x)
+     * <p>
+     * The split itself, see split.
+     */
+    private AVLTree[] splitTree(int x) {
+        if(this.cache != null) // the nodes move to the new trees
+            this.cache.clear();
         AVLNode x_node = treePosition(x,(AVLNode) this.getRoot());
-        AVLTree bigger_then_x = new AVLTree();
-        AVLTree smaller_then_x = new AVLTree();
+        AVLTree bigger_then_x = newTree(null);
+        AVLTree smaller_then_x = newTree(null);
         if(x_node.getRight().isRealNode())
-            bigger_then_x = new AVLTree((AVLNode) x_node.getRight()); //min,max is updated in the constructor
+            bigger_then_x = newTree((AVLNode) x_node.getRight()); //min,max is updated in the constructor
         if(x_node.getLeft().isRealNode())
-            smaller_then_x = new AVLTree((AVLNode) x_node.getLeft());
+            smaller_then_x = newTree((AVLNode) x_node.getLeft());
         if(smaller_then_x.getRoot() != null)
             smaller_then_x.getRoot().setParent(null);//disconnect the sub-trees from x
         if(bigger_then_x.getRoot() != null)
@@ -595,18 +919,18 @@ public class AVLTree {
                 next_pointer.setLeft(new AVLNode());
             curr_pointer.setSize(1); // update size after disconnecting
             curr_pointer.setHeight(0);
-            AVLTree curr_left_tree = new AVLTree();
-            AVLTree curr_right_tree = new AVLTree();
+            AVLTree curr_left_tree = newTree(null);
+            AVLTree curr_right_tree = newTree(null);
             if(curr_came_from_right)
             {
                 if(curr_left.isRealNode())
-                    curr_left_tree = new AVLTree(curr_left);
+                    curr_left_tree = newTree(curr_left);
                 smaller_then_x.join(curr_pointer,curr_left_tree); //min,max,sizes fields updates inside join
             }
             else
             {
                 if(curr_right.isRealNode())
-                    curr_right_tree = new AVLTree(curr_right);
+                    curr_right_tree = newTree(curr_right);
                 bigger_then_x.join(curr_pointer,curr_right_tree);//min,max,sizes fields updates inside join
             }
 
@@ -634,12 +958,17 @@ public class AVLTree {
      * Returns the complexity of the operation (|tree.height - t.height| + 1).
      * <p>
      * precondition: keys(t) < x < keys() or keys(t) > x > keys(). t/tree might be empty (height = -1).
+     * precondition: t has the same augmentation (monoid) as the tree.
      * postcondition: none
      */
     public int join(IAVLNode x, AVLTree t) {
         int result;
         if(!x.isRealNode())
             return 0;
+        if(this.trace != null)
+            this.trace.treeJoin(this, x, t);
+        if(t.cache != null) // the nodes of t move to the tree
+            t.cache.clear();
         if(x.getParent() != null) // if x has parent- disconnect them
         {
             if(isRightChild((AVLNode)x.getParent(),(AVLNode)x))
@@ -655,6 +984,7 @@ public class AVLTree {
         x.setLeft(new AVLNode());
         x.setHeight(0);
         x.setSize(1);
+        updateAggregate((AVLNode) x);
         
         if (t.empty() && !this.empty()) //t is empty and this isn't
         {
@@ -748,6 +1078,128 @@ public class AVLTree {
 
     }
 
+    /**
+     * public AVLTree[] splitAt(int[] keys)
+     * <p>
+     * splits the tree into keys.length + 1 trees at the given keys.
+     * Returns an array t with keys(t[0]) < keys[0] <= keys(t[1]) < keys[1] <= ... <= keys(t[keys.length]),
+     * an item whose key equals keys[i] goes to t[i + 1]. A tree with no keys in its range is empty.
+     * Like split, the nodes move to the new trees and the tree shouldn't be used afterwards.
+     * <p>
+     * precondition: keys is sorted in non-decreasing order (the keys don't have to be in the tree)
+     * Time complexity: O(k log n), k = keys.length
+     */
+    public AVLTree[] splitAt(int[] keys) {
+        AVLTree[] result = new AVLTree[keys.length + 1];
+        AVLTree rest = this;
+        for(int i = keys.length - 1; i >= 0; i--) { // cut the pieces from the top
+            AVLTree[] parts = rest.splitBelow(keys[i]);
+            result[i + 1] = parts[1];
+            rest = parts[0];
+        }
+        result[0] = rest;
+        return result;
+    }
+
+    /**
+     * public AVLTree[] splitByRank(int k)
+     * <p>
+     * splits the tree into k trees of consecutive key ranges and almost equal sizes:
+     * t[i] gets the items of ranks i*n/k to (i+1)*n/k - 1, so the sizes differ by at most 1
+     * (if n < k, some of the trees are empty). See splitAt.
+     * <p>
+     * precondition: k > 0
+     * Time complexity: O(k log n)
+     */
+    public AVLTree[] splitByRank(int k) {
+        if(k <= 0)
+            throw new IllegalArgumentException("k must be positive");
+        int n = size();
+        if(n == 0) {
+            AVLTree[] result = new AVLTree[k];
+            result[0] = this;
+            for(int i = 1; i < k; i++)
+                result[i] = newTree(null);
+            return result;
+        }
+        int[] keys = new int[k - 1];
+        for(int i = 1; i < k; i++)
+            keys[i - 1] = nodeOfRank((int) ((long) i * n / k)).getKey();
+        return splitAt(keys);
+    }
+
+    /**
+     * public static AVLTree joinAll(AVLTree[] trees)
+     * <p>
+     * joins the trees into one tree, the inverse of splitAt and splitByRank.
+     * Returns the joined tree, which is one of the given trees; the other trees shouldn't be used afterwards.
+     * The minimum of every non-empty tree (but the first) is used as the join node.
+     * <p>
+     * precondition: trees.length > 0, keys(trees[i]) < keys(trees[i + 1]), and the trees have the same augmentation.
+     * Time complexity: O(k log n), k = trees.length
+     */
+    public static AVLTree joinAll(AVLTree[] trees) {
+        AVLTree res = trees[0];
+        for(int i = 1; i < trees.length; i++) {
+            AVLTree t = trees[i];
+            if(t.empty())
+                continue;
+            if(res.empty()) {
+                res = t;
+                continue;
+            }
+            AVLNode x = t.min;
+            t.delete(x.getKey()); // x is disconnected from t, and reused by join
+            res.join(x, t);
+        }
+        return res;
+    }
+
+    /**
+     * private AVLTree[] splitBelow(int x)
+     * <p>
+     * Splits the tree into the keys smaller than x and the keys not smaller than x.
+     * The smallest key >= x is split on, and its node is put back in the upper tree.
+     */
+    private AVLTree[] splitBelow(int x) {
+        AVLNode pivot = null;
+        AVLNode y = this.root;
+        while(y.isRealNode()) { // find the smallest key >= x
+            if(y.getKey() >= x) {
+                pivot = y;
+                y = y.left;
+            }
+            else
+                y = y.right;
+        }
+        if(pivot == null)
+            return new AVLTree[] {this, newTree(null)};
+        AVLTree[] parts = split(pivot.getKey());
+        parts[1].join(pivot, newTree(null));
+        return parts;
+    }
+
+    /**
+     * private AVLNode nodeOfRank(int r)
+     * <p>
+     * Returns the node of the r-th smallest key (from 0), using the sizes of the sub-trees.
+     * precondition: 0 <= r < size()
+     */
+    private AVLNode nodeOfRank(int r) {
+        AVLNode x = this.root;
+        while(true) {
+            int leftSize = x.left.getSize();
+            if(r == leftSize)
+                return x;
+            if(r < leftSize)
+                x = x.left;
+            else {
+                r -= leftSize + 1;
+                x = x.right;
+            }
+        }
+    }
+
     /**
      * protected AVLNode successor(AVLNode root)
      * <p>
@@ -779,14 +1231,100 @@ public class AVLTree {
      */
     protected void updateSizes(AVLNode x) {
         x.setSize(((AVLNode)x.getRight()).getSize()+((AVLNode)x.getLeft()).getSize()+1);
+        updateAggregate(x);
         AVLNode y = (AVLNode) x.getParent();
         while( y != null)
         {
             y.setSize(((AVLNode)y.getRight()).getSize()+((AVLNode)y.getLeft()).getSize()+1);
+            updateAggregate(y);
             y = (AVLNode) y.getParent();
         }
 
     }
+
+    /**
+     * protected void updateAggregate(AVLNode x)
+     * <p>
+     * Recomputes the aggregate of x from its children, if the tree is augmented.
+     * Called wherever sizes are updated, so aggregates are kept through rotations, rebalancing, split and join.
+     * pre: x is not a virtual node, x's children aggregates are up to date.
+     */
+    protected void updateAggregate(AVLNode x) {
+        if(this.monoid == null)
+            return;
+        x.aggregate = this.monoid.combine(this.monoid.combine(aggregateOf((AVLNode) x.getLeft()),
+                this.monoid.lift(x.getKey(), x.getValue())), aggregateOf((AVLNode) x.getRight()));
+    }
+
+    /**
+     * private Object aggregateOf(AVLNode x)
+     * <p>
+     * Returns the aggregate of x's sub-tree (the identity for a virtual node).
+     */
+    private Object aggregateOf(AVLNode x) {
+        return x.isRealNode() ? x.aggregate : this.monoid.identity();
+    }
+
+    /**
+     * public <A> A aggregate(int lo, int hi)
+     * <p>
+     * Returns the aggregate of the items with lo <= key <= hi, combined in ascending key order
+     * (the identity if there are none).
+     * precondition: the tree was created with a monoid, and A is its aggregate type.
+     * Time complexity: O(log n)
+     */
+    @SuppressWarnings("unchecked")
+    public <A> A aggregate(int lo, int hi) {
+        if(this.monoid == null)
+            throw new IllegalStateException("the tree is not augmented");
+        AVLNode x = this.root;
+        while(x.isRealNode()) { // find the highest node in the range
+            if(x.getKey() < lo)
+                x = (AVLNode) x.getRight();
+            else if(x.getKey() > hi)
+                x = (AVLNode) x.getLeft();
+            else
+                break;
+        }
+        if(!x.isRealNode())
+            return (A) this.monoid.identity();
+        Object left = this.monoid.identity(); // keys >= lo in x's left sub-tree
+        AVLNode y = (AVLNode) x.getLeft();
+        while(y.isRealNode()) {
+            if(y.getKey() >= lo) {
+                left = this.monoid.combine(this.monoid.combine(this.monoid.lift(y.getKey(), y.getValue()),
+                        aggregateOf((AVLNode) y.getRight())), left);
+                y = (AVLNode) y.getLeft();
+            }
+            else
+                y = (AVLNode) y.getRight();
+        }
+        Object right = this.monoid.identity(); // keys <= hi in x's right sub-tree
+        y = (AVLNode) x.getRight();
+        while(y.isRealNode()) {
+            if(y.getKey() <= hi) {
+                right = this.monoid.combine(right, this.monoid.combine(aggregateOf((AVLNode) y.getLeft()),
+                        this.monoid.lift(y.getKey(), y.getValue())));
+                y = (AVLNode) y.getRight();
+            }
+            else
+                y = (AVLNode) y.getLeft();
+        }
+        return (A) this.monoid.combine(this.monoid.combine(left, this.monoid.lift(x.getKey(), x.getValue())), right);
+    }
+
+    /**
+     * protected AVLTree newTree(AVLNode root)
+     * <p>
+     * Returns a tree with the given root (an empty tree if root is null) and the same augmentation as this tree.
+     * Used by split, so the trees it builds keep maintaining the aggregates.
+     * Sub-classes override it to return trees of their own type.
+     */
+    protected AVLTree newTree(AVLNode root) {
+        AVLTree t = root == null ? new AVLTree() : new AVLTree(root);
+        t.monoid = this.monoid;
+        return t;
+    }
     /**
      *protected void updateHeights(AVLNode x)
      * <p>
@@ -826,81 +1364,3579 @@ public class AVLTree {
 
 
     /**
-     * public interface IAVLNode
-     * ! Do not delete or modify this - otherwise all tests will fail !
+     * public static class IntervalTree
+     * <p>
+     * An interval tree on top of AVLTree: the key of a node is the start point of its intervals,
+     * and every node also keeps the maximal end point in its sub-tree (maxEnd) and the number of intervals
+     * in its sub-tree. Both are maintained by overriding updateAggregate, so they are kept through the same
+     * rotation, rebalance, split and join paths as the sizes.
+     * Several intervals may share a start point, they are kept in the same node sorted by descending end point.
+     * Start points must be non-negative (like all AVLTree keys), and the info of a node is the info
+     * of its interval with the largest end point.
      */
-    public interface IAVLNode {
-        public int getKey(); // Returns node's key (for virtual node return -1).
+    public static class IntervalTree extends AVLTree {
 
-        public String getValue(); // Returns node's value [info], for virtual node returns null.
+        public IntervalTree() {
+            super();
+        }
 
-        public void setLeft(IAVLNode node); // Sets left child.
+        /**
+         * public static IntervalTree fromSorted(int[] starts, int[] ends, String[] infos)
+         * <p>
+         * Builds a balanced tree from intervals sorted by start point, in O(n).
+         * precondition: starts is sorted in ascending order, 0 <= starts[i] <= ends[i].
+         */
+        public static IntervalTree fromSorted(int[] starts, int[] ends, String[] infos) {
+            IntervalTree t = new IntervalTree();
+            if(starts.length == 0)
+                return t;
+            IntervalNode[] nodes = new IntervalNode[starts.length];
+            int count = 0;
+            for(int i = 0; i < starts.length; i++) { // one node per start point
+                if(i > 0 && starts[i] < starts[i - 1])
+                    throw new IllegalArgumentException("starts must be sorted");
+                if(count > 0 && nodes[count - 1].getKey() == starts[i])
+                    nodes[count - 1].add(new Interval(starts[i], ends[i], infos[i]));
+                else
+                    nodes[count++] = new IntervalNode(new Interval(starts[i], ends[i], infos[i]));
+            }
+            t.root = t.buildBalanced(nodes, 0, count - 1);
+            t.root.setParent(null);
+            t.min = nodes[0];
+            t.max = nodes[count - 1];
+            return t;
+        }
 
-        public IAVLNode getLeft(); // Returns left child, if there is no left child returns null.
+        /**
+         * private AVLNode buildBalanced(IntervalNode[] nodes, int from, int to)
+         * <p>
+         * Builds a balanced sub-tree of nodes[from..to] and returns its root.
+         */
+        private AVLNode buildBalanced(IntervalNode[] nodes, int from, int to) {
+            if(from > to)
+                return new AVLNode();
+            int mid = (from + to) >>> 1;
+            IntervalNode x = nodes[mid];
+            x.setLeft(buildBalanced(nodes, from, mid - 1));
+            x.setRight(buildBalanced(nodes, mid + 1, to));
+            updateHeight(x);
+            x.setSize(x.getLeft().getSize() + x.getRight().getSize() + 1);
+            updateAggregate(x);
+            return x;
+        }
 
-        public void setRight(IAVLNode node); // Sets right child.
+        /**
+         * public void insert(int start, int end, String info)
+         * <p>
+         * Inserts the interval [start, end].
+         * precondition: 0 <= start <= end
+         */
+        public void insert(int start, int end, String info) {
+            Interval interval = new Interval(start, end, info);
+            AVLNode x = treePosition(start, this.root);
+            if(x.isRealNode() && x.getKey() == start) { // add to the existing node and update maxEnd up to the root
+                ((IntervalNode) x).add(interval);
+                while(x != null) {
+                    updateAggregate(x);
+                    x = (AVLNode) x.getParent();
+                }
+                return;
+            }
+            insert(new IntervalNode(interval));
+        }
 
-        public IAVLNode getRight(); // Returns right child, if there is no right child return null.
+        /**
+         * public int insert(int k, String i)
+         * <p>
+         * Inserts the point interval [k, k], returns -1 if there already are intervals that start at k.
+         */
+        public int insert(int k, String i) {
+            if(this.trace != null)
+                this.trace.treeInsert(this, k, i);
+            AVLNode x = treePosition(k, this.root);
+            if(x.isRealNode() && x.getKey() == k)
+                return -1;
+            return insert(new IntervalNode(new Interval(k, k, i)));
+        }
 
-        public void setParent(IAVLNode node); // Sets parent.
+        /**
+         * public boolean delete(int start, int end)
+         * <p>
+         * Deletes one interval [start, end]. Returns false if there is no such interval.
+         */
+        public boolean delete(int start, int end) {
+            AVLNode x = treePosition(start, this.root);
+            if(!x.isRealNode() || x.getKey() != start)
+                return false;
+            IntervalNode node = (IntervalNode) x;
+            if(!node.remove(end))
+                return false;
+            if(node.count == 0) {
+                delete(start);
+                return true;
+            }
+            while(x != null) {
+                updateAggregate(x);
+                x = (AVLNode) x.getParent();
+            }
+            return true;
+        }
 
-        public IAVLNode getParent(); // Returns the parent, if there is no parent return null.
+        /**
+         * public Iterator<Interval> overlapping(int lo, int hi)
+         * <p>
+         * Returns a lazy iterator over the intervals that overlap [lo, hi] (start <= hi and end >= lo),
+         * in ascending order of their start points.
+         * Sub-trees whose maxEnd is smaller than lo are skipped, the intervals of a node are read only while
+         * their end is not smaller than lo, and the walk stops at the first start point bigger than hi.
+         * Every node the walk visits is on the search path of hi or an ancestor of a result,
+         * so it visits O(log n + k log(n / k)) nodes (O(log n + k) when the results are close together).
+         * The tree must not be changed while iterating.
+         * Time complexity: O(log n + k log(n / k)) for k results
+         */
+        public Iterator<Interval> overlapping(int lo, int hi) {
+            return new OverlapIterator(this.root, lo, hi);
+        }
 
-        public boolean isRealNode(); // Returns True if this is a non-virtual AVL node.
+        /**
+         * public int size()
+         * <p>
+         * Returns the number of nodes, which is the number of distinct start points, not the number of intervals
+         * (see intervalCount). rank, split by key and the other AVLTree operations count nodes as well.
+         */
+        public int size() {
+            return super.size();
+        }
 
-        public void setHeight(int height); // Sets the height of the node.
+        /**
+         * public int intervalCount()
+         * <p>
+         * Returns the number of intervals in the tree.
+         * Time complexity: O(1)
+         */
+        public int intervalCount() {
+            return this.root.isRealNode() ? ((IntervalNode) this.root).intervalCount : 0;
+        }
 
-        public int getHeight(); // Returns the height of the node (-1 for virtual nodes).
+        /**
+         * protected void updateAggregate(AVLNode x)
+         * <p>
+         * Recomputes maxEnd and the interval count of x from its own intervals and its children.
+         */
+        protected void updateAggregate(AVLNode x) {
+            IntervalNode node = (IntervalNode) x;
+            node.maxEnd = Math.max(node.ownMaxEnd(), Math.max(maxEnd((AVLNode) x.getLeft()), maxEnd((AVLNode) x.getRight())));
+            node.intervalCount = node.count + intervalCount((AVLNode) x.getLeft()) + intervalCount((AVLNode) x.getRight());
+        }
 
-        public int getSize(); // Returns the size of the node (0 for virtual nodes).
-        
-        public void setSize(int size); // Sets the size of the node.
+        protected AVLTree newTree(AVLNode root) {
+            IntervalTree t = new IntervalTree();
+            if(root != null) {
+                t.root = root;
+                t.min = minNode(root);
+                t.max = maxNode(root);
+            }
+            return t;
+        }
+
+        private static int maxEnd(AVLNode x) {
+            return x.isRealNode() ? ((IntervalNode) x).maxEnd : Integer.MIN_VALUE;
+        }
+
+        private static int intervalCount(AVLNode x) {
+            return x.isRealNode() ? ((IntervalNode) x).intervalCount : 0;
+        }
+
+        /**
+         * private static class OverlapIterator
+         * <p>
+         * In-order walk with an explicit stack, pruned by maxEnd.
+         */
+        private static class OverlapIterator implements Iterator<Interval> {
+            private final int lo, hi;
+            private final ArrayDeque<IntervalNode> stack = new ArrayDeque<>();
+            private IntervalNode curr; // node whose intervals are being returned
+            private int index;
+            private Interval next;
+
+            OverlapIterator(AVLNode root, int lo, int hi) {
+                this.lo = lo;
+                this.hi = hi;
+                pushLeft(root);
+                advance();
+            }
+
+            private void pushLeft(AVLNode x) {
+                while(x.isRealNode() && ((IntervalNode) x).maxEnd >= this.lo) {
+                    this.stack.push((IntervalNode) x);
+                    x = (AVLNode) x.getLeft();
+                }
+            }
+
+            private void advance() {
+                while(true) {
+                    if(this.curr != null) {
+                        if(this.index < this.curr.count && this.curr.intervals[this.index].end >= this.lo) {
+                            this.next = this.curr.intervals[this.index++]; // sorted by descending end
+                            return;
+                        }
+                        this.curr = null;
+                    }
+                    if(this.stack.isEmpty()) {
+                        this.next = null;
+                        return;
+                    }
+                    IntervalNode x = this.stack.pop();
+                    if(x.getKey() > this.hi) { // all the remaining start points are bigger than hi
+                        this.stack.clear();
+                        this.next = null;
+                        return;
+                    }
+                    pushLeft((AVLNode) x.getRight());
+                    this.curr = x;
+                    this.index = 0;
+                }
+            }
+
+            public boolean hasNext() {
+                return this.next != null;
+            }
 
+            public Interval next() {
+                if(this.next == null)
+                    throw new NoSuchElementException();
+                Interval res = this.next;
+                advance();
+                return res;
+            }
+        }
     }
 
     /**
-     * public class AVLNode
+     * public static class Interval
      * <p>
-     * If you wish to implement classes other than AVLTree
-     * (for example AVLNode), do it in this file, not in another file.
+     * A closed interval [start, end] with its info.
+     */
+    public static class Interval {
+        public final int start, end;
+        public final String info;
+
+        public Interval(int start, int end, String info) {
+            if(end < start)
+                throw new IllegalArgumentException("end < start");
+            this.start = start;
+            this.end = end;
+            this.info = info;
+        }
+    }
+
+    /**
+     * public static class IntervalNode
      * <p>
-     * This class can and MUST be modified (It must implement IAVLNode).
+     * A node of an IntervalTree: the intervals that start at its key (sorted by descending end point),
+     * and maxEnd and the number of intervals of its sub-tree.
      */
-    public static class AVLNode implements IAVLNode {
-        String value;
-        int key, height, size;
-        AVLNode left, parent, right;
+    public static class IntervalNode extends AVLNode {
+        Interval[] intervals;
+        int count;
+        int maxEnd;
+        int intervalCount;
 
-        public AVLNode() {
-            this.key = -1;
-            this.value = null;
-            this.right = null;
-            this.left = null;
-            this.parent = null;
-            this.height = -1;
-            this.size = 0;
+        public IntervalNode(Interval interval) {
+            super(interval.start, interval.info);
+            this.intervals = new Interval[] {interval};
+            this.count = 1;
+            this.maxEnd = interval.end;
+            this.intervalCount = 1;
         }
 
-        public AVLNode(int key, String value) {
-            assert key >= 0;
-            this.key = key;
-            this.value = value;
-            this.setRight(new AVLNode());
-            this.setLeft(new AVLNode());
-            this.parent = null;
-            this.height = 0;
-            this.size = 1;
+        void add(Interval interval) {
+            if(this.count == this.intervals.length)
+                this.intervals = Arrays.copyOf(this.intervals, 2 * this.count);
+            int i = this.count++;
+            while(i > 0 && this.intervals[i - 1].end < interval.end) { // keep the descending order of the ends
+                this.intervals[i] = this.intervals[i - 1];
+                i--;
+            }
+            this.intervals[i] = interval;
+            setValue(this.intervals[0].info);
         }
 
-        public int getKey() {
-            return this.key;
+        boolean remove(int end) {
+            for(int i = 0; i < this.count; i++) {
+                if(this.intervals[i].end == end) {
+                    System.arraycopy(this.intervals, i + 1, this.intervals, i, this.count - i - 1);
+                    this.intervals[--this.count] = null;
+                    if(this.count > 0)
+                        setValue(this.intervals[0].info);
+                    return true;
+                }
+            }
+            return false;
         }
 
-        public String getValue() {
-            return this.value;
+        int ownMaxEnd() {
+            return this.count == 0 ? Integer.MIN_VALUE : this.intervals[0].end;
         }
 
-        public void setValue(String value) {
+        public int getMaxEnd() {
+            return this.maxEnd;
+        }
+    }
+
+    /**
+     * public static class VersionedTree
+     * <p>
+     * The MVCC mode of AVLTree: every insert and delete that changes the tree creates a new version, numbered
+     * 1, 2, 3, ... (version 0 is the empty tree). A version is an immutable AVL tree that shares all the nodes
+     * it didn't change with the previous version (path copying), so a write copies O(log n) nodes.
+     * <p>
+     * Writers are serialized by a lock. Readers open a Snapshot at a version and read it without any locking,
+     * so long scans never stall writers. A version that no snapshot holds is dropped as soon as it's older than
+     * the last retainedVersions versions, even while an older version is held by a long scan, and the nodes
+     * that only it used are left to the garbage collector.
+     */
+    public static class VersionedTree {
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final ConcurrentSkipListMap<Long, Version> versions = new ConcurrentSkipListMap<>();
+        private final Object pins = new Object(); // guards the reader counts and the removal of versions
+        private final int retainedVersions;
+        private volatile Version current;
+
+        public VersionedTree() {
+            this(0);
+        }
+
+        /**
+         * public VersionedTree(int retainedVersions)
+         * <p>
+         * Creates an empty tree that keeps the last retainedVersions versions (besides the current one)
+         * even if no snapshot holds them, so snapshot(v) can open them.
+         */
+        public VersionedTree(int retainedVersions) {
+            if(retainedVersions < 0)
+                throw new IllegalArgumentException("retainedVersions must be non-negative");
+            this.retainedVersions = retainedVersions;
+            this.current = new Version(0, null);
+            this.versions.put(0L, this.current);
+        }
+
+        /**
+         * public long insert(int k, String i)
+         * <p>
+         * Inserts an item with key k and info i, if the key doesn't exist in the current version.
+         * Returns the version of the insert, or -1 if an item with key k already exists.
+         * precondition: k >= 0
+         */
+        public long insert(int k, String i) {
+            this.writeLock.lock();
+            try {
+                VersionedNode root = this.current.root;
+                if(find(root, k) != null)
+                    return -1;
+                return publish(insert(root, k, i));
+            } finally {
+                this.writeLock.unlock();
+            }
+        }
+
+        /**
+         * public long delete(int k)
+         * <p>
+         * Deletes the item with key k, if it exists in the current version.
+         * Returns the version of the delete, or -1 if there is no item with key k.
+         */
+        public long delete(int k) {
+            this.writeLock.lock();
+            try {
+                VersionedNode root = this.current.root;
+                if(find(root, k) == null)
+                    return -1;
+                return publish(delete(root, k));
+            } finally {
+                this.writeLock.unlock();
+            }
+        }
+
+        /**
+         * public long version()
+         * <p>
+         * Returns the current version.
+         */
+        public long version() {
+            return this.current.number;
+        }
+
+        /**
+         * public long oldestVersion()
+         * <p>
+         * Returns the oldest version that can still be opened by snapshot(v).
+         * Some of the versions between it and the last retainedVersions versions may have been dropped
+         * (the ones that no snapshot held).
+         */
+        public long oldestVersion() {
+            return this.versions.firstKey();
+        }
+
+        /**
+         * public Snapshot snapshot()
+         * <p>
+         * Opens a snapshot of the current version. The snapshot must be closed when it's no longer used.
+         */
+        public Snapshot snapshot() {
+            synchronized(this.pins) {
+                return new Snapshot(this, this.current, this.current.number);
+            }
+        }
+
+        /**
+         * public Snapshot snapshot(long v)
+         * <p>
+         * Opens a snapshot of the tree as of version v.
+         * Throws IllegalArgumentException if v is newer than the current version or was already dropped.
+         */
+        public Snapshot snapshot(long v) {
+            synchronized(this.pins) {
+                Version version = this.versions.get(v);
+                if(version == null)
+                    throw new IllegalArgumentException("version " + v + " isn't available, the current version is "
+                            + this.current.number + " and the last " + this.retainedVersions + " versions are kept");
+                return new Snapshot(this, version, v);
+            }
+        }
+
+        /**
+         * public String search(int k)
+         * <p>
+         * Returns the info of the item with key k in the current version, or null if there is none.
+         */
+        public String search(int k) {
+            VersionedNode x = find(this.current.root, k);
+            return x == null ? null : x.value;
+        }
+
+        /**
+         * public int size()
+         * <p>
+         * Returns the number of items in the current version.
+         */
+        public int size() {
+            return size(this.current.root);
+        }
+
+        /**
+         * private long publish(VersionedNode root)
+         * <p>
+         * Makes root the current version and drops the versions that are no longer needed.
+         * precondition: the write lock is held
+         */
+        private long publish(VersionedNode root) {
+            Version v = new Version(this.current.number + 1, root);
+            this.versions.put(v.number, v);
+            this.current = v;
+            Long previous = this.versions.lowerKey(v.number - this.retainedVersions); // it just left the retained versions
+            if(previous != null)
+                collect(previous);
+            return v.number;
+        }
+
+        /**
+         * private void collect(long v)
+         * <p>
+         * Drops version v if no snapshot holds it and the next version is not newer than the watermark
+         * (the current version minus retainedVersions). A version can only become droppable when the watermark
+         * passes its next version (publish) or when its last snapshot is closed (release),
+         * so those are the only places that call collect, each for one version: O(log(#versions)).
+         */
+        private void collect(long v) {
+            synchronized(this.pins) {
+                Version version = this.versions.get(v);
+                if(version == null || version.readers > 0)
+                    return;
+                Long next = this.versions.higherKey(v);
+                if(next != null && next <= this.current.number - this.retainedVersions)
+                    this.versions.remove(v);
+            }
+        }
+
+        private void release(Version v) {
+            synchronized(this.pins) {
+                v.readers--;
+            }
+            collect(v.number);
+        }
+
+        private static VersionedNode find(VersionedNode x, int k) {
+            while(x != null && x.key != k)
+                x = k < x.key ? x.left : x.right;
+            return x;
+        }
+
+        private static int height(VersionedNode x) {
+            return x == null ? -1 : x.height;
+        }
+
+        private static int size(VersionedNode x) {
+            return x == null ? 0 : x.size;
+        }
+
+        /**
+         * private static VersionedNode balance(int k, String i, VersionedNode l, VersionedNode r)
+         * <p>
+         * Returns a new balanced sub-tree with the item (k, i) between l and r.
+         * precondition: l and r are AVL trees whose heights differ by at most 2.
+         */
+        private static VersionedNode balance(int k, String i, VersionedNode l, VersionedNode r) {
+            if(height(l) > height(r) + 1) {
+                if(height(l.left) >= height(l.right)) // single rotation
+                    return new VersionedNode(l.key, l.value, l.left, new VersionedNode(k, i, l.right, r));
+                VersionedNode lr = l.right; // double rotation
+                return new VersionedNode(lr.key, lr.value, new VersionedNode(l.key, l.value, l.left, lr.left),
+                        new VersionedNode(k, i, lr.right, r));
+            }
+            if(height(r) > height(l) + 1) {
+                if(height(r.right) >= height(r.left))
+                    return new VersionedNode(r.key, r.value, new VersionedNode(k, i, l, r.left), r.right);
+                VersionedNode rl = r.left;
+                return new VersionedNode(rl.key, rl.value, new VersionedNode(k, i, l, rl.left),
+                        new VersionedNode(r.key, r.value, rl.right, r.right));
+            }
+            return new VersionedNode(k, i, l, r);
+        }
+
+        /**
+         * private static VersionedNode insert(VersionedNode x, int k, String i)
+         * <p>
+         * Returns a copy of the sub-tree x with the item (k, i), x itself isn't changed.
+         * precondition: k isn't in x
+         */
+        private static VersionedNode insert(VersionedNode x, int k, String i) {
+            if(x == null)
+                return new VersionedNode(k, i, null, null);
+            if(k < x.key)
+                return balance(x.key, x.value, insert(x.left, k, i), x.right);
+            return balance(x.key, x.value, x.left, insert(x.right, k, i));
+        }
+
+        /**
+         * private static VersionedNode delete(VersionedNode x, int k)
+         * <p>
+         * Returns a copy of the sub-tree x without the key k, x itself isn't changed.
+         * precondition: k is in x
+         */
+        private static VersionedNode delete(VersionedNode x, int k) {
+            if(k < x.key)
+                return balance(x.key, x.value, delete(x.left, k), x.right);
+            if(k > x.key)
+                return balance(x.key, x.value, x.left, delete(x.right, k));
+            if(x.left == null)
+                return x.right;
+            if(x.right == null)
+                return x.left;
+            VersionedNode successor = x.right;
+            while(successor.left != null)
+                successor = successor.left;
+            return balance(successor.key, successor.value, x.left, delete(x.right, successor.key));
+        }
+
+        /**
+         * private static class Version
+         * <p>
+         * The root of a version, and the number of open snapshots that read it.
+         */
+        private static class Version {
+            final long number;
+            final VersionedNode root;
+            int readers; // guarded by pins
+
+            Version(long number, VersionedNode root) {
+                this.number = number;
+                this.root = root;
+            }
+        }
+    }
+
+    /**
+     * public static class Snapshot
+     * <p>
+     * A read-only view of a VersionedTree as of one version. A snapshot never changes and never blocks writers,
+     * and may be read by several threads. Closing it allows its version to be dropped.
+     */
+    public static class Snapshot implements AutoCloseable {
+        private final VersionedTree tree;
+        private final VersionedTree.Version pinned;
+        private final VersionedNode root;
+        private final long version;
+        private boolean closed;
+
+        /**
+         * precondition: the pins lock of the tree is held
+         */
+        private Snapshot(VersionedTree tree, VersionedTree.Version pinned, long version) {
+            this.tree = tree;
+            this.pinned = pinned;
+            this.root = pinned.root;
+            this.version = version;
+            pinned.readers++;
+        }
+
+        /**
+         * public long version()
+         * <p>
+         * Returns the version that the snapshot reads.
+         */
+        public long version() {
+            return this.version;
+        }
+
+        /**
+         * public String search(int k)
+         * <p>
+         * Returns the info of the item with key k, or null if there is none.
+         */
+        public String search(int k) {
+            VersionedNode x = VersionedTree.find(this.root, k);
+            return x == null ? null : x.value;
+        }
+
+        /**
+         * public int size()
+         * <p>
+         * Returns the number of items in the snapshot.
+         */
+        public int size() {
+            return VersionedTree.size(this.root);
+        }
+
+        /**
+         * public int rank(int k)
+         * <p>
+         * Returns the number of keys smaller than k.
+         * Time Complexity: O(log n)
+         */
+        public int rank(int k) {
+            int res = 0;
+            VersionedNode x = this.root;
+            while(x != null) {
+                if(k <= x.key)
+                    x = x.left;
+                else {
+                    res += VersionedTree.size(x.left) + 1;
+                    x = x.right;
+                }
+            }
+            return res;
+        }
+
+        /**
+         * public VersionedNode select(int r)
+         * <p>
+         * Returns the item with the r-th smallest key (starting from 0).
+         * precondition: 0 <= r < size()
+         * Time Complexity: O(log n)
+         */
+        public VersionedNode select(int r) {
+            if(r < 0 || r >= size())
+                throw new IndexOutOfBoundsException("rank " + r + " out of 0.." + (size() - 1));
+            VersionedNode x = this.root;
+            while(true) {
+                int leftSize = VersionedTree.size(x.left);
+                if(r == leftSize)
+                    return x;
+                if(r < leftSize)
+                    x = x.left;
+                else {
+                    r -= leftSize + 1;
+                    x = x.right;
+                }
+            }
+        }
+
+        /**
+         * public Iterator<VersionedNode> range(int lo, int hi)
+         * <p>
+         * Returns an iterator over the items with lo <= key <= hi in ascending order.
+         * Time Complexity: O(log n) to start, O(1) amortized per item
+         */
+        public Iterator<VersionedNode> range(int lo, int hi) {
+            return new Iterator<VersionedNode>() {
+                private final ArrayDeque<VersionedNode> stack = new ArrayDeque<>();
+
+                { // push the path to lo
+                    VersionedNode x = root;
+                    while(x != null) {
+                        if(x.key >= lo) {
+                            stack.push(x);
+                            x = x.left;
+                        } else
+                            x = x.right;
+                    }
+                }
+
+                public boolean hasNext() {
+                    return !stack.isEmpty() && stack.peek().key <= hi;
+                }
+
+                public VersionedNode next() {
+                    if(!hasNext())
+                        throw new NoSuchElementException();
+                    VersionedNode res = stack.pop();
+                    for(VersionedNode x = res.right; x != null; x = x.left)
+                        stack.push(x);
+                    return res;
+                }
+            };
+        }
+
+        /**
+         * public int[] keysToArray()
+         * <p>
+         * Returns a sorted array which contains all keys in the snapshot.
+         */
+        public int[] keysToArray() {
+            int[] res = new int[size()];
+            int i = 0;
+            for(Iterator<VersionedNode> it = range(0, Integer.MAX_VALUE); it.hasNext(); )
+                res[i++] = it.next().key;
+            return res;
+        }
+
+        /**
+         * public void close()
+         * <p>
+         * Releases the version of the snapshot. Closing a snapshot more than once has no effect.
+         */
+        public void close() {
+            synchronized(this) {
+                if(this.closed)
+                    return;
+                this.closed = true;
+            }
+            this.tree.release(this.pinned);
+        }
+    }
+
+    /**
+     * public static class VersionedNode
+     * <p>
+     * An immutable node of a VersionedTree, it may be shared by many versions.
+     */
+    public static class VersionedNode {
+        final int key, height, size;
+        final String value;
+        final VersionedNode left, right;
+
+        VersionedNode(int key, String value, VersionedNode left, VersionedNode right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(VersionedTree.height(left), VersionedTree.height(right)) + 1;
+            this.size = VersionedTree.size(left) + VersionedTree.size(right) + 1;
+        }
+
+        public int getKey() {
+            return this.key;
+        }
+
+        public String getValue() {
+            return this.value;
+        }
+    }
+
+    /**
+     * public static class LoggedTree
+     * <p>
+     * An AVLTree index that survives crashes: every insert, delete, split and join is appended to a write-ahead log
+     * in the directory of the tree before it returns, and open replays the log on startup.
+     * <p>
+     * Group commit: a mutation appends its record to an in-memory buffer, and one of the waiting threads writes the
+     * whole buffer and forces it (FileChannel.force) for all of them, so concurrent writers share the fsyncs.
+     * When the log passes checkpointBytes, a checkpoint dumps the sorted items of the tree (keysToArray/infoToArray)
+     * to a new checkpoint file (written aside and renamed atomically), and the log starts over in a new segment.
+     * Recovery loads the checkpoint and replays the segments after it. A torn record at the end of the
+     * last segment (a crash during a write) is cut off.
+     * <p>
+     * A mutation checks its precondition, appends its record and only then changes the tree, so a record that can't
+     * be encoded leaves the tree as it was. The change is visible to search (and the other reads) as soon as the
+     * record is appended, before the group commit makes it durable: a read may see a write whose writer is still
+     * waiting in awaitDurable. If writing the log fails, the tree may hold changes that aren't in the log, so
+     * from then on the mutations throw IOException and the reads throw UncheckedIOException; reopen the tree to
+     * get its durable state.
+     * <p>
+     * Files: "checkpoint" and "wal-[segment].log". Every record is [length][body][CRC32 of body].
+     */
+    public static class LoggedTree implements Closeable {
+        private static final byte INSERT = 1, DELETE = 2, SPLIT = 3, JOIN = 4;
+        private static final int CHECKPOINT_MAGIC = 0x41564c43;
+        private static final String CHECKPOINT = "checkpoint";
+        private final Path dir;
+        private final long checkpointBytes;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition flushed = this.lock.newCondition();
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream(); // the body being built
+        private final DataOutputStream recordOut = new DataOutputStream(this.record);
+        private final CRC32 crc = new CRC32();
+        private ByteArrayOutputStream pending = new ByteArrayOutputStream(); // records that weren't written yet
+        private AVLTree tree;
+        private FileChannel log;
+        private long segment;
+        private long segmentBytes;
+        private long appendedRecords, durableRecords;
+        private boolean flushing;
+        private IOException failure; // once the log failed, the tree can't be changed anymore
+        private boolean closed;
+
+        private LoggedTree(Path dir, long checkpointBytes) {
+            this.dir = dir;
+            this.checkpointBytes = checkpointBytes;
+            this.tree = new AVLTree();
+        }
+
+        /**
+         * public static LoggedTree open(Path dir, long checkpointBytes)
+         * <p>
+         * Opens the tree stored in dir (creating it if needed), recovering its state from the last checkpoint and the log.
+         * A checkpoint is taken whenever the log grows past checkpointBytes.
+         */
+        public static LoggedTree open(Path dir, long checkpointBytes) throws IOException {
+            if(checkpointBytes <= 0)
+                throw new IllegalArgumentException("checkpointBytes must be positive");
+            Files.createDirectories(dir);
+            LoggedTree t = new LoggedTree(dir, checkpointBytes);
+            t.recover();
+            return t;
+        }
+
+        /**
+         * public int insert(int k, String i)
+         * <p>
+         * Like AVLTree.insert, returns after the insert is durable.
+         */
+        public int insert(int k, String i) throws IOException {
+            long lsn;
+            int res;
+            this.lock.lock();
+            try {
+                checkWritable();
+                if(contains(k))
+                    return -1;
+                this.recordOut.writeByte(INSERT);
+                this.recordOut.writeInt(k);
+                writeString(this.recordOut, i);
+                lsn = append();
+                res = this.tree.insert(k, i);
+            } finally {
+                this.lock.unlock();
+            }
+            awaitDurable(lsn);
+            return res;
+        }
+
+        /**
+         * public int delete(int k)
+         * <p>
+         * Like AVLTree.delete, returns after the delete is durable.
+         */
+        public int delete(int k) throws IOException {
+            long lsn;
+            int res;
+            this.lock.lock();
+            try {
+                checkWritable();
+                if(!contains(k))
+                    return -1;
+                this.recordOut.writeByte(DELETE);
+                this.recordOut.writeInt(k);
+                lsn = append();
+                res = this.tree.delete(k);
+            } finally {
+                this.lock.unlock();
+            }
+            awaitDurable(lsn);
+            return res;
+        }
+
+        /**
+         * public AVLTree split(int x)
+         * <p>
+         * Splits the tree like AVLTree.split: the tree keeps the keys smaller than x, and the keys bigger than x
+         * are returned as a separate tree (which isn't logged). The item with key x is dropped.
+         * Throws IllegalArgumentException if x isn't in the tree.
+         */
+        public AVLTree split(int x) throws IOException {
+            long lsn;
+            AVLTree[] parts;
+            this.lock.lock();
+            try {
+                checkWritable();
+                if(!contains(x))
+                    throw new IllegalArgumentException("key " + x + " isn't in the tree");
+                this.recordOut.writeByte(SPLIT);
+                this.recordOut.writeInt(x);
+                lsn = append();
+                parts = this.tree.split(x);
+                this.tree = parts[0];
+            } finally {
+                this.lock.unlock();
+            }
+            awaitDurable(lsn);
+            return parts[1];
+        }
+
+        /**
+         * public int join(int k, String i, AVLTree t)
+         * <p>
+         * Joins the item (k, i) and the items of t into the tree like AVLTree.join, t must not be used afterwards.
+         * The record contains all the items of t, so it costs O(t.size()) log space.
+         * Throws IllegalArgumentException unless keys(t) < k < keys() or keys(t) > k > keys().
+         */
+        public int join(int k, String i, AVLTree t) throws IOException {
+            long lsn;
+            int res;
+            this.lock.lock();
+            try {
+                checkWritable();
+                boolean below = (t.empty() || t.max.getKey() < k) && (this.tree.empty() || k < this.tree.min.getKey());
+                boolean above = (t.empty() || t.min.getKey() > k) && (this.tree.empty() || k > this.tree.max.getKey());
+                if(k < 0 || !(below || above))
+                    throw new IllegalArgumentException("key " + k + " doesn't separate the trees");
+                int[] keys = t.keysToArray();
+                String[] infos = t.infoToArray();
+                this.recordOut.writeByte(JOIN);
+                this.recordOut.writeInt(k);
+                writeString(this.recordOut, i);
+                this.recordOut.writeInt(keys.length);
+                for(int j = 0; j < keys.length; j++) {
+                    this.recordOut.writeInt(keys[j]);
+                    writeString(this.recordOut, infos[j]);
+                }
+                lsn = append();
+                res = this.tree.join(new AVLNode(k, i), t);
+            } finally {
+                this.lock.unlock();
+            }
+            awaitDurable(lsn);
+            return res;
+        }
+
+        public String search(int k) {
+            this.lock.lock();
+            try {
+                checkReadable();
+                return this.tree.search(k);
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        public int size() {
+            this.lock.lock();
+            try {
+                checkReadable();
+                return this.tree.size();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        public int[] keysToArray() {
+            this.lock.lock();
+            try {
+                checkReadable();
+                return this.tree.keysToArray();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        public String[] infoToArray() {
+            this.lock.lock();
+            try {
+                checkReadable();
+                return this.tree.infoToArray();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * public void checkpoint()
+         * <p>
+         * Dumps the tree to a new checkpoint and starts a new log segment, the older segments are deleted.
+         * Time Complexity: O(n), writers wait for it.
+         */
+        public void checkpoint() throws IOException {
+            this.lock.lock();
+            try {
+                while(this.flushing)
+                    this.flushed.awaitUninterruptibly();
+                checkWritable();
+                try {
+                    writeCheckpoint();
+                } catch(IOException e) {
+                    this.failure = e;
+                    throw e;
+                } finally {
+                    this.flushed.signalAll();
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * public void close()
+         * <p>
+         * Writes the records that weren't written yet and closes the log.
+         */
+        public void close() throws IOException {
+            this.lock.lock();
+            try {
+                while(this.flushing)
+                    this.flushed.awaitUninterruptibly();
+                if(this.closed)
+                    return;
+                this.closed = true;
+                try {
+                    if(this.failure == null && this.pending.size() > 0) {
+                        write(this.log, this.pending.toByteArray());
+                        this.log.force(false);
+                        this.durableRecords = this.appendedRecords;
+                    }
+                } finally {
+                    this.log.close();
+                    this.flushed.signalAll();
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private void checkWritable() throws IOException {
+            if(this.closed)
+                throw new IOException("the tree is closed");
+            if(this.failure != null)
+                throw new IOException("the write-ahead log failed", this.failure);
+        }
+
+        private void checkReadable() {
+            if(this.failure != null)
+                throw new UncheckedIOException("the write-ahead log failed, the tree must be reopened", this.failure);
+        }
+
+        private boolean contains(int k) {
+            AVLNode x = this.tree.treePosition(k, this.tree.root);
+            return x.isRealNode() && x.getKey() == k;
+        }
+
+        /**
+         * private long append()
+         * <p>
+         * Moves the record that was built in recordOut to the pending records, and returns its sequence number.
+         * precondition: the lock is held
+         */
+        private long append() throws IOException {
+            byte[] body = this.record.toByteArray();
+            this.record.reset();
+            this.crc.reset();
+            this.crc.update(body, 0, body.length);
+            DataOutputStream out = new DataOutputStream(this.pending);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeInt((int) this.crc.getValue());
+            this.segmentBytes += body.length + 8;
+            return ++this.appendedRecords;
+        }
+
+        /**
+         * private void awaitDurable(long lsn)
+         * <p>
+         * Waits until record lsn is forced to disk. If no other thread is writing, the calling thread writes and forces
+         * all the pending records (group commit). Takes a checkpoint afterwards if the log grew past checkpointBytes.
+         */
+        private void awaitDurable(long lsn) throws IOException {
+            this.lock.lock();
+            try {
+                while(this.durableRecords < lsn) {
+                    if(this.failure != null)
+                        throw new IOException("the write-ahead log failed", this.failure);
+                    if(this.flushing) {
+                        this.flushed.awaitUninterruptibly();
+                        continue;
+                    }
+                    this.flushing = true;
+                    byte[] batch = this.pending.toByteArray();
+                    this.pending.reset();
+                    long batchEnd = this.appendedRecords;
+                    FileChannel channel = this.log;
+                    IOException error = null;
+                    this.lock.unlock();
+                    try {
+                        write(channel, batch);
+                        channel.force(false);
+                    } catch(IOException e) {
+                        error = e;
+                    } finally {
+                        this.lock.lock();
+                    }
+                    this.flushing = false;
+                    if(error == null)
+                        this.durableRecords = Math.max(this.durableRecords, batchEnd);
+                    else
+                        this.failure = error;
+                    this.flushed.signalAll();
+                }
+                if(this.segmentBytes >= this.checkpointBytes && !this.flushing && this.failure == null && !this.closed) {
+                    try {
+                        writeCheckpoint();
+                    } catch(IOException e) {
+                        this.failure = e;
+                        throw e;
+                    } finally {
+                        this.flushed.signalAll();
+                    }
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * private void writeCheckpoint()
+         * <p>
+         * precondition: the lock is held and no thread is writing to the log
+         * The pending records are dropped, since the checkpoint contains their effects.
+         */
+        private void writeCheckpoint() throws IOException {
+            long next = this.segment + 1;
+            int[] keys = this.tree.keysToArray();
+            String[] infos = this.tree.infoToArray();
+            Path tmp = this.dir.resolve(CHECKPOINT + ".tmp");
+            try(FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                CheckedOutputStream checked = new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeLong(next);
+                out.writeInt(keys.length);
+                for(int j = 0; j < keys.length; j++) {
+                    out.writeInt(keys[j]);
+                    writeString(out, infos[j]);
+                }
+                out.writeInt((int) checked.getChecksum().getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, this.dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileChannel oldLog = this.log;
+            long oldSegment = this.segment;
+            this.log = openSegment(next);
+            this.segment = next;
+            this.segmentBytes = 0;
+            this.pending.reset();
+            this.durableRecords = this.appendedRecords;
+            oldLog.close();
+            syncDirectory(); // the rename and the new segment must be durable before the old segments are gone
+            for(long s = oldSegment; s >= 0 && Files.deleteIfExists(segmentPath(s)); s--)
+                ;
+        }
+
+        /**
+         * private void recover()
+         * <p>
+         * Loads the checkpoint, replays the log segments after it and opens the last segment for appending.
+         */
+        private void recover() throws IOException {
+            long first = 0;
+            Path checkpoint = this.dir.resolve(CHECKPOINT);
+            if(Files.exists(checkpoint))
+                first = readCheckpoint(checkpoint);
+            long last = first;
+            List<Long> segments = new ArrayList<>();
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(this.dir, "wal-*.log")) {
+                for(Path f : files) {
+                    String name = f.getFileName().toString();
+                    segments.add(Long.parseLong(name.substring(4, name.length() - 4)));
+                }
+            }
+            Collections.sort(segments);
+            for(int j = 0; j < segments.size(); j++) {
+                long s = segments.get(j);
+                if(s < first) { // already in the checkpoint
+                    Files.delete(segmentPath(s));
+                    continue;
+                }
+                boolean isLast = j == segments.size() - 1;
+                replay(segmentPath(s), isLast);
+                last = s;
+            }
+            this.segment = last;
+            this.log = openSegment(last);
+            this.segmentBytes = this.log.size();
+            syncDirectory();
+        }
+
+        private long readCheckpoint(Path checkpoint) throws IOException {
+            try(InputStream file = Files.newInputStream(checkpoint)) {
+                CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file), new CRC32());
+                DataInputStream in = new DataInputStream(checked);
+                if(in.readInt() != CHECKPOINT_MAGIC)
+                    throw new IOException(checkpoint + " isn't a checkpoint");
+                long next = in.readLong();
+                int n = in.readInt();
+                AVLTree t = new AVLTree();
+                for(int j = 0; j < n; j++) {
+                    int k = in.readInt();
+                    t.insert(k, readString(in));
+                }
+                int expected = (int) checked.getChecksum().getValue();
+                if(in.readInt() != expected)
+                    throw new IOException(checkpoint + " is corrupted");
+                this.tree = t;
+                return next;
+            }
+        }
+
+        /**
+         * private void replay(Path path, boolean isLast)
+         * <p>
+         * Applies the records of a segment. A torn or corrupted record ends the replay: in the last segment it is
+         * the tail of a crashed write and is cut off, in an older segment it means the log is corrupted.
+         */
+        private void replay(Path path, boolean isLast) throws IOException {
+            long good = 0;
+            long size = Files.size(path);
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                while(true) {
+                    byte[] body;
+                    try {
+                        int length = in.readInt();
+                        if(length < 1 || good + length + 8 > size)
+                            break;
+                        body = new byte[length];
+                        in.readFully(body);
+                        this.crc.reset();
+                        this.crc.update(body, 0, length);
+                        if(in.readInt() != (int) this.crc.getValue())
+                            break;
+                    } catch(EOFException e) {
+                        break;
+                    }
+                    apply(body);
+                    good += body.length + 8;
+                }
+            }
+            if(good < size) {
+                if(!isLast)
+                    throw new IOException(path + " is corrupted at offset " + good);
+                try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(good);
+                    channel.force(true);
+                }
+            }
+        }
+
+        private void apply(byte[] body) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            byte op = in.readByte();
+            int k = in.readInt();
+            switch(op) {
+                case INSERT:
+                    this.tree.insert(k, readString(in));
+                    break;
+                case DELETE:
+                    this.tree.delete(k);
+                    break;
+                case SPLIT:
+                    this.tree = this.tree.split(k)[0];
+                    break;
+                case JOIN:
+                    String i = readString(in);
+                    AVLTree t = new AVLTree();
+                    int n = in.readInt();
+                    for(int j = 0; j < n; j++) {
+                        int key = in.readInt();
+                        t.insert(key, readString(in));
+                    }
+                    this.tree.join(new AVLNode(k, i), t);
+                    break;
+                default:
+                    throw new IOException("unknown log record " + op);
+            }
+        }
+
+        private Path segmentPath(long s) {
+            return this.dir.resolve("wal-" + s + ".log");
+        }
+
+        /**
+         * private void syncDirectory()
+         * <p>
+         * Makes the entries of the directory durable (created and renamed files): a rename or a new file
+         * is only durable once the directory itself is forced.
+         * Some platforms can't open a directory (Windows), there the file system orders it by itself.
+         */
+        private void syncDirectory() throws IOException {
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(this.dir, StandardOpenOption.READ);
+            } catch(IOException e) {
+                return;
+            }
+            try(FileChannel d = channel) {
+                d.force(true);
+            }
+        }
+
+        private FileChannel openSegment(long s) throws IOException {
+            FileChannel channel = FileChannel.open(segmentPath(s), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            return channel;
+        }
+
+        private static void write(FileChannel channel, byte[] bytes) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+        }
+
+        private static void writeString(DataOutputStream out, String s) throws IOException {
+            if(s == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if(length == -1)
+                return null;
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * public static class LSMTree
+     * <p>
+     * A write-optimized ordered map (log-structured merge tree) from non-negative int keys to String values.
+     * Writes go to a small AVLTree memtable. When the memtable has memtableSize items it's frozen, and a background
+     * thread flushes it (through keysToArray/infoToArray) to an immutable sorted run: a memory-mapped file
+     * with a sparse in-memory index (every INDEX_INTERVAL-th key) and a bloom filter. When there are more than
+     * maxRuns runs, the thread merges adjacent runs of similar sizes into one (size-tiered compaction, see pickMerge),
+     * so an item is rewritten O(log n) times instead of on every merge. Deleted items are dropped when the oldest run
+     * takes part in the merge.
+     * <p>
+     * Reads look at the memtable, the frozen memtables and the runs from the newest to the oldest, the first one that
+     * has the key wins. A delete writes a tombstone that hides the older values until compaction drops it.
+     * The runs are temporary files in dir, they are deleted on close (the map isn't durable).
+     * Writers block (before they take the memtable lock, so readers don't) when MAX_FROZEN memtables wait for the
+     * background thread.
+     */
+    public static class LSMTree implements Closeable {
+        private static final int INDEX_INTERVAL = 16;
+        private static final int MAX_FROZEN = 2;
+        private static final int BLOOM_BITS_PER_KEY = 10;
+        private static final int BLOOM_HASHES = 7;
+        private static final int TIER_RATIO = 2; // a run joins a merge if it's at most TIER_RATIO times the newer runs
+        private static final int NULL_VALUE = -1, TOMBSTONE_VALUE = -2; // lengths of special values in a run
+        private static final String TOMBSTONE = new String("tombstone"); // compared by identity
+        private static final Object MISSING = new Object();
+        private final Path dir;
+        private final int memtableSize;
+        private final int maxRuns;
+        private final ReentrantReadWriteLock memtableLock = new ReentrantReadWriteLock();
+        private final ReentrantLock stateLock = new ReentrantLock();
+        private final Condition stateChanged = this.stateLock.newCondition();
+        private final Thread compactor;
+        private AVLTree memtable; // guarded by memtableLock
+        private volatile State state; // replaced as a whole under stateLock
+        private volatile Throwable failure;
+        private boolean closed; // guarded by stateLock
+        private long nextRun;
+
+        /**
+         * public LSMTree(Path dir, int memtableSize, int maxRuns)
+         * <p>
+         * Creates an empty map whose runs are kept in dir.
+         */
+        public LSMTree(Path dir, int memtableSize, int maxRuns) throws IOException {
+            if(memtableSize <= 0 || maxRuns <= 0)
+                throw new IllegalArgumentException("memtableSize and maxRuns must be positive");
+            Files.createDirectories(dir);
+            this.dir = dir;
+            this.memtableSize = memtableSize;
+            this.maxRuns = maxRuns;
+            this.memtable = new AVLTree();
+            this.state = new State(new AVLTree[0], new Run[0]);
+            this.compactor = new Thread(this::compact, "LSMTree compactor");
+            this.compactor.setDaemon(true);
+            this.compactor.start();
+        }
+
+        /**
+         * public void put(int k, String i)
+         * <p>
+         * Sets the info of key k to i.
+         * precondition: k >= 0
+         * Time Complexity: O(log memtableSize) amortized, unless the background thread is behind
+         */
+        public void put(int k, String i) {
+            write(k, i);
+        }
+
+        /**
+         * public void delete(int k)
+         * <p>
+         * Deletes key k, if it's in the map.
+         */
+        public void delete(int k) {
+            write(k, TOMBSTONE);
+        }
+
+        /**
+         * public String search(int k)
+         * <p>
+         * Returns the info of key k, or null if it isn't in the map.
+         * Time Complexity: O(log memtableSize + number of runs), a run is read only if its bloom filter may contain k
+         */
+        public String search(int k) {
+            State s;
+            Object res;
+            this.memtableLock.readLock().lock();
+            try {
+                s = this.state;
+                res = lookup(this.memtable, k);
+            } finally {
+                this.memtableLock.readLock().unlock();
+            }
+            for(int j = 0; res == MISSING && j < s.frozen.length; j++)
+                res = lookup(s.frozen[j], k);
+            for(int j = 0; res == MISSING && j < s.runs.length; j++)
+                res = s.runs[j].find(k);
+            return res == MISSING || res == TOMBSTONE ? null : (String) res;
+        }
+
+        /**
+         * public Iterator<Map.Entry<Integer, String>> range(int lo, int hi)
+         * <p>
+         * Returns an iterator over the items with lo <= key <= hi in ascending order, merged from the memtables and
+         * the runs. The items of the memtables are copied when the iterator is created, the runs are read lazily.
+         */
+        public Iterator<Map.Entry<Integer, String>> range(int lo, int hi) {
+            List<Cursor> sources = new ArrayList<>(); // from the newest to the oldest
+            State s;
+            this.memtableLock.readLock().lock();
+            try {
+                s = this.state;
+                sources.add(new SliceCursor(this.memtable, lo, hi));
+            } finally {
+                this.memtableLock.readLock().unlock();
+            }
+            for(AVLTree m : s.frozen)
+                sources.add(new SliceCursor(m, lo, hi));
+            for(Run r : s.runs)
+                sources.add(r.cursor(lo, hi));
+            MergeCursor merged = new MergeCursor(sources);
+            return new Iterator<Map.Entry<Integer, String>>() {
+                public boolean hasNext() {
+                    return merged.valid;
+                }
+
+                public Map.Entry<Integer, String> next() {
+                    if(!merged.valid)
+                        throw new NoSuchElementException();
+                    Map.Entry<Integer, String> res = new AbstractMap.SimpleImmutableEntry<>(merged.key, merged.value);
+                    merged.advance();
+                    return res;
+                }
+            };
+        }
+
+        /**
+         * public int runCount()
+         * <p>
+         * Returns the number of sorted runs.
+         */
+        public int runCount() {
+            return this.state.runs.length;
+        }
+
+        /**
+         * public void close()
+         * <p>
+         * Stops the background thread and deletes the runs.
+         */
+        public void close() throws IOException {
+            this.stateLock.lock();
+            try {
+                this.closed = true;
+                this.stateChanged.signalAll();
+            } finally {
+                this.stateLock.unlock();
+            }
+            try {
+                this.compactor.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for(Run r : this.state.runs)
+                Files.deleteIfExists(r.path);
+        }
+
+        private void write(int k, String i) {
+            if(k < 0)
+                throw new IllegalArgumentException("keys must be non-negative");
+            awaitRoom();
+            this.memtableLock.writeLock().lock();
+            try {
+                AVLNode x = this.memtable.treePosition(k, this.memtable.root);
+                if(x.getKey() == k)
+                    x.setValue(i);
+                else
+                    this.memtable.insert(k, i);
+                if(this.memtable.size() >= this.memtableSize)
+                    freeze();
+            } finally {
+                this.memtableLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * private void awaitRoom()
+         * <p>
+         * Waits while the background thread is MAX_FROZEN memtables behind, and fails if the tree is closed or
+         * the background thread failed. Called before the memtable lock is taken, so readers go on meanwhile.
+         * Writers that got through at the same time may freeze a few more memtables, one each at most.
+         */
+        private void awaitRoom() {
+            this.stateLock.lock();
+            try {
+                while(this.state.frozen.length >= MAX_FROZEN && this.failure == null && !this.closed)
+                    this.stateChanged.awaitUninterruptibly();
+                checkFailure();
+                if(this.closed)
+                    throw new IllegalStateException("the tree is closed");
+            } finally {
+                this.stateLock.unlock();
+            }
+        }
+
+        /**
+         * private void freeze()
+         * <p>
+         * Hands the memtable over to the background thread, without waiting (see awaitRoom).
+         * precondition: the memtable write lock is held
+         */
+        private void freeze() {
+            this.stateLock.lock();
+            try {
+                AVLTree[] frozen = new AVLTree[this.state.frozen.length + 1];
+                frozen[0] = this.memtable;
+                System.arraycopy(this.state.frozen, 0, frozen, 1, this.state.frozen.length);
+                this.state = new State(frozen, this.state.runs);
+                this.memtable = new AVLTree();
+                this.stateChanged.signalAll();
+            } finally {
+                this.stateLock.unlock();
+            }
+        }
+
+        private void checkFailure() {
+            Throwable f = this.failure;
+            if(f instanceof IOException)
+                throw new UncheckedIOException("the background thread of the tree failed", (IOException) f);
+            if(f != null)
+                throw new IllegalStateException("the background thread of the tree failed", f);
+        }
+
+        /**
+         * private void compact()
+         * <p>
+         * The loop of the background thread: merges runs when there are more than maxRuns, otherwise flushes
+         * the oldest frozen memtable. While writers wait for a flush, the merge is put off until there are
+         * 2 * maxRuns runs, so the reads don't slow down without bound.
+         * Any failure (not only an IOException) stops the thread and is rethrown to the writers, so they don't wait
+         * in freeze for a thread that is gone.
+         */
+        private void compact() {
+            try {
+                while(true) {
+                    State s;
+                    this.stateLock.lock();
+                    try {
+                        while(!this.closed && this.state.frozen.length == 0 && this.state.runs.length <= this.maxRuns)
+                            this.stateChanged.awaitUninterruptibly();
+                        if(this.closed)
+                            return;
+                        s = this.state;
+                    } finally {
+                        this.stateLock.unlock();
+                    }
+                    boolean writersWait = s.frozen.length >= MAX_FROZEN;
+                    if(s.runs.length > this.maxRuns && (!writersWait || s.runs.length >= 2 * this.maxRuns))
+                        mergeRuns(s);
+                    else
+                        flushOldest(s);
+                }
+            } catch(Throwable e) {
+                this.stateLock.lock();
+                try {
+                    this.failure = e;
+                    this.stateChanged.signalAll();
+                } finally {
+                    this.stateLock.unlock();
+                }
+            }
+        }
+
+        private void flushOldest(State s) throws IOException {
+            AVLTree m = s.frozen[s.frozen.length - 1];
+            int[] keys = m.keysToArray();
+            String[] infos = m.infoToArray();
+            RunWriter w = new RunWriter(newRunPath(), keys.length);
+            for(int j = 0; j < keys.length; j++)
+                w.add(keys[j], infos[j]);
+            Run r = w.finish();
+            this.stateLock.lock();
+            try { // only the background thread removes frozen memtables and runs, so m is still the oldest
+                State now = this.state;
+                Run[] runs = new Run[now.runs.length + 1];
+                runs[0] = r;
+                System.arraycopy(now.runs, 0, runs, 1, now.runs.length);
+                this.state = new State(Arrays.copyOf(now.frozen, now.frozen.length - 1), runs);
+                this.stateChanged.signalAll();
+            } finally {
+                this.stateLock.unlock();
+            }
+        }
+
+        /**
+         * private void mergeRuns(State s)
+         * <p>
+         * Merges the runs picked by pickMerge into one, in their place. The tombstones are dropped only if the oldest
+         * run is merged, otherwise they still hide the items of the older runs.
+         * Readers that still use the old runs keep their mappings after the files are deleted.
+         */
+        private void mergeRuns(State s) throws IOException {
+            int[] window = pickMerge(s.runs);
+            int from = window[0], to = window[1];
+            boolean oldest = to == s.runs.length;
+            List<Cursor> sources = new ArrayList<>();
+            int count = 0;
+            for(int j = from; j < to; j++) {
+                sources.add(s.runs[j].cursor(0, Integer.MAX_VALUE));
+                count += s.runs[j].count;
+            }
+            RunWriter w = new RunWriter(newRunPath(), count);
+            for(MergeCursor c = new MergeCursor(sources, !oldest); c.valid; c.advance())
+                w.add(c.key, c.value);
+            Run merged = w.finish();
+            this.stateLock.lock();
+            try { // runs flushed meanwhile were added in front, so the merged ones moved by the same shift
+                State now = this.state;
+                int shift = now.runs.length - s.runs.length;
+                Run[] runs = new Run[now.runs.length - (to - from) + 1];
+                System.arraycopy(now.runs, 0, runs, 0, shift + from);
+                runs[shift + from] = merged;
+                System.arraycopy(now.runs, shift + to, runs, shift + from + 1, now.runs.length - shift - to);
+                this.state = new State(now.frozen, runs);
+                this.stateChanged.signalAll();
+            } finally {
+                this.stateLock.unlock();
+            }
+            for(int j = from; j < to; j++)
+                Files.deleteIfExists(s.runs[j].path);
+        }
+
+        /**
+         * private static int[] pickMerge(Run[] runs)
+         * <p>
+         * Returns {from, to}: the adjacent runs runs[from..to) to merge, at least two of them. Going from the newest
+         * run to the oldest, a window grows while the next run has at most TIER_RATIO times the items of the window,
+         * and the first window of two runs or more is picked. A run is merged again only with runs that together are
+         * about as large as it, so every merge at least about doubles the run an item is in.
+         * If no window has two runs (the sizes grow faster than TIER_RATIO), the adjacent pair with the fewest
+         * items is picked.
+         * precondition: runs.length >= 2
+         * Time Complexity: O(runs.length^2)
+         */
+        private static int[] pickMerge(Run[] runs) {
+            for(int from = 0; from < runs.length - 1; from++) {
+                long items = runs[from].count;
+                int to = from + 1;
+                while(to < runs.length && runs[to].count <= TIER_RATIO * items)
+                    items += runs[to++].count;
+                if(to - from >= 2)
+                    return new int[]{from, to};
+            }
+            int best = 0;
+            for(int j = 1; j < runs.length - 1; j++)
+                if((long) runs[j].count + runs[j + 1].count < (long) runs[best].count + runs[best + 1].count)
+                    best = j;
+            return new int[]{best, best + 2};
+        }
+
+        private Path newRunPath() {
+            return this.dir.resolve("run-" + (this.nextRun++) + ".sst");
+        }
+
+        /**
+         * private static Object lookup(AVLTree t, int k)
+         * <p>
+         * Returns the info of k in the memtable t (possibly TOMBSTONE), or MISSING.
+         */
+        private static Object lookup(AVLTree t, int k) {
+            AVLNode x = t.treePosition(k, t.root);
+            return x.getKey() == k ? x.getValue() : MISSING;
+        }
+
+        /**
+         * private static long bloomHash(int k)
+         * <p>
+         * Two 32 bit hashes of k in one long, for double hashing.
+         */
+        private static long bloomHash(int k) {
+            long h = k * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 29;
+            h *= 0xBF58476D1CE4E5B9L;
+            return h ^ (h >>> 32);
+        }
+
+        /**
+         * private static class State
+         * <p>
+         * The frozen memtables and the runs, both from the newest to the oldest.
+         */
+        private static class State {
+            final AVLTree[] frozen;
+            final Run[] runs;
+
+            State(AVLTree[] frozen, Run[] runs) {
+                this.frozen = frozen;
+                this.runs = runs;
+            }
+        }
+
+        /**
+         * private static class Run
+         * <p>
+         * An immutable sorted run. An item is [key][length of the info][UTF-8 info], the length is NULL_VALUE
+         * or TOMBSTONE_VALUE for special infos. Only absolute reads are used, so a run may be read by many threads.
+         */
+        private static class Run {
+            final Path path;
+            final MappedByteBuffer data;
+            final int count;
+            final int[] indexKeys; // the keys of items 0, INDEX_INTERVAL, 2*INDEX_INTERVAL, ...
+            final int[] indexOffsets;
+            final long[] bloom;
+
+            Run(Path path, MappedByteBuffer data, int count, int[] indexKeys, int[] indexOffsets, long[] bloom) {
+                this.path = path;
+                this.data = data;
+                this.count = count;
+                this.indexKeys = indexKeys;
+                this.indexOffsets = indexOffsets;
+                this.bloom = bloom;
+            }
+
+            boolean mightContain(int k) {
+                long h = bloomHash(k);
+                int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+                long bits = (long) this.bloom.length * 64;
+                for(int j = 0; j < BLOOM_HASHES; j++) {
+                    long bit = Integer.toUnsignedLong(h1 + j * h2) % bits;
+                    if((this.bloom[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                        return false;
+                }
+                return true;
+            }
+
+            /**
+             * int block(int k)
+             * <p>
+             * Returns the offset of the index entry of the last indexed key <= k (or of the first item).
+             */
+            int block(int k) {
+                int lo = 0, hi = this.indexKeys.length - 1;
+                while(lo < hi) {
+                    int mid = (lo + hi + 1) >>> 1;
+                    if(this.indexKeys[mid] <= k)
+                        lo = mid;
+                    else
+                        hi = mid - 1;
+                }
+                return this.indexOffsets[lo];
+            }
+
+            /**
+             * Object find(int k)
+             * <p>
+             * Returns the info of k (possibly TOMBSTONE), or MISSING.
+             * Time Complexity: O(1) if the bloom filter rules k out, O(log count + INDEX_INTERVAL) otherwise
+             */
+            Object find(int k) {
+                if(this.count == 0 || !mightContain(k))
+                    return MISSING;
+                RunCursor c = new RunCursor(this, block(k), k);
+                return c.valid && c.key == k ? c.value : MISSING;
+            }
+
+            Cursor cursor(int lo, int hi) {
+                if(this.count == 0)
+                    return new SliceCursor(new AVLTree(), lo, hi);
+                RunCursor c = new RunCursor(this, block(lo), lo);
+                c.hi = hi;
+                if(c.valid && c.key > hi)
+                    c.valid = false;
+                return c;
+            }
+        }
+
+        /**
+         * private static class RunWriter
+         * <p>
+         * Writes the items of a run in ascending key order, building its index and bloom filter on the way.
+         */
+        private static class RunWriter {
+            final Path path;
+            final DataOutputStream out;
+            final long[] bloom;
+            int[] indexKeys = new int[16];
+            int[] indexOffsets = new int[16];
+            int count;
+            int offset;
+
+            RunWriter(Path path, int expected) throws IOException {
+                this.path = path;
+                this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+                this.bloom = new long[Math.max(1, (int) ((long) expected * BLOOM_BITS_PER_KEY / 64) + 1)];
+            }
+
+            void add(int k, String i) throws IOException {
+                if(this.count % INDEX_INTERVAL == 0) {
+                    int n = this.count / INDEX_INTERVAL;
+                    if(n == this.indexKeys.length) {
+                        this.indexKeys = Arrays.copyOf(this.indexKeys, 2 * n);
+                        this.indexOffsets = Arrays.copyOf(this.indexOffsets, 2 * n);
+                    }
+                    this.indexKeys[n] = k;
+                    this.indexOffsets[n] = this.offset;
+                }
+                long h = bloomHash(k);
+                int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+                long bits = (long) this.bloom.length * 64;
+                for(int j = 0; j < BLOOM_HASHES; j++) {
+                    long bit = Integer.toUnsignedLong(h1 + j * h2) % bits;
+                    this.bloom[(int) (bit >>> 6)] |= 1L << bit;
+                }
+                this.out.writeInt(k);
+                if(i == TOMBSTONE || i == null) {
+                    this.out.writeInt(i == null ? NULL_VALUE : TOMBSTONE_VALUE);
+                    this.offset += 8;
+                } else {
+                    byte[] bytes = i.getBytes(StandardCharsets.UTF_8);
+                    this.out.writeInt(bytes.length);
+                    this.out.write(bytes);
+                    this.offset += 8 + bytes.length;
+                }
+                this.count++;
+            }
+
+            Run finish() throws IOException {
+                this.out.close();
+                MappedByteBuffer data;
+                try(FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+                    data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                int n = (this.count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+                return new Run(this.path, data, this.count, Arrays.copyOf(this.indexKeys, n),
+                        Arrays.copyOf(this.indexOffsets, n), this.bloom);
+            }
+        }
+
+        /**
+         * private abstract static class Cursor
+         * <p>
+         * A position in a sorted source of items: key and value are the current item while valid.
+         */
+        private abstract static class Cursor {
+            boolean valid;
+            int key;
+            String value; // may be TOMBSTONE
+
+            abstract void advance();
+        }
+
+        /**
+         * private static class SliceCursor
+         * <p>
+         * The items of a memtable in [lo, hi], copied when the cursor is created.
+         */
+        private static class SliceCursor extends Cursor {
+            int[] keys = new int[16];
+            String[] values = new String[16];
+            int n, next;
+
+            SliceCursor(AVLTree t, int lo, int hi) {
+                collect(t.root, lo, hi);
+                advance();
+            }
+
+            private void collect(AVLNode x, int lo, int hi) {
+                if(!x.isRealNode())
+                    return;
+                if(lo < x.getKey())
+                    collect(x.left, lo, hi);
+                if(lo <= x.getKey() && x.getKey() <= hi) {
+                    if(this.n == this.keys.length) {
+                        this.keys = Arrays.copyOf(this.keys, 2 * this.n);
+                        this.values = Arrays.copyOf(this.values, 2 * this.n);
+                    }
+                    this.keys[this.n] = x.getKey();
+                    this.values[this.n++] = x.getValue();
+                }
+                if(x.getKey() < hi)
+                    collect(x.right, lo, hi);
+            }
+
+            void advance() {
+                this.valid = this.next < this.n;
+                if(this.valid) {
+                    this.key = this.keys[this.next];
+                    this.value = this.values[this.next++];
+                }
+            }
+        }
+
+        /**
+         * private static class RunCursor
+         * <p>
+         * Reads the items of a run from an offset, skipping the keys smaller than a given key.
+         */
+        private static class RunCursor extends Cursor {
+            final Run run;
+            int offset;
+            int hi = Integer.MAX_VALUE;
+
+            RunCursor(Run run, int offset, int from) {
+                this.run = run;
+                this.offset = offset;
+                do {
+                    advance();
+                } while(this.valid && this.key < from);
+            }
+
+            void advance() {
+                MappedByteBuffer data = this.run.data;
+                if(this.offset >= data.limit()) {
+                    this.valid = false;
+                    return;
+                }
+                this.key = data.getInt(this.offset);
+                int length = data.getInt(this.offset + 4);
+                this.offset += 8;
+                if(length == NULL_VALUE)
+                    this.value = null;
+                else if(length == TOMBSTONE_VALUE)
+                    this.value = TOMBSTONE;
+                else {
+                    byte[] bytes = new byte[length];
+                    for(int j = 0; j < length; j++)
+                        bytes[j] = data.get(this.offset + j);
+                    this.value = new String(bytes, StandardCharsets.UTF_8);
+                    this.offset += length;
+                }
+                this.valid = this.key <= this.hi;
+            }
+        }
+
+        /**
+         * private static class MergeCursor
+         * <p>
+         * Merges sources given from the newest to the oldest: for every key, the item of the newest source that has it.
+         * Deleted keys are skipped, unless keepTombstones.
+         */
+        private static class MergeCursor extends Cursor {
+            final Cursor[] sources;
+            final boolean keepTombstones;
+
+            MergeCursor(List<Cursor> sources) {
+                this(sources, false);
+            }
+
+            MergeCursor(List<Cursor> sources, boolean keepTombstones) {
+                this.sources = sources.toArray(new Cursor[0]);
+                this.keepTombstones = keepTombstones;
+                advance();
+            }
+
+            void advance() {
+                do {
+                    Cursor newest = null;
+                    for(Cursor c : this.sources) // the first source with the minimal key is the newest
+                        if(c.valid && (newest == null || c.key < newest.key))
+                            newest = c;
+                    this.valid = newest != null;
+                    if(!this.valid)
+                        return;
+                    this.key = newest.key;
+                    this.value = newest.value;
+                    for(Cursor c : this.sources)
+                        if(c.valid && c.key == this.key)
+                            c.advance();
+                } while(this.value == TOMBSTONE && !this.keepTombstones);
+            }
+        }
+    }
+
+    /**
+     * public static class ShardedTree
+     * <p>
+     * An ordered map from non-negative int keys to String values, range-partitioned over several AVLTree shards.
+     * Every shard holds the keys in [lo, hi) and has its own lock, so operations on different shards run in parallel.
+     * <p>
+     * The shards start with equal parts of the key space. Every migrateMillis, a background thread looks at the
+     * operations since its last look, and if the busiest shard had more than twice the operations of a neighbour, it
+     * moves half of the busiest shard's keys to that neighbour, using split and join (see migrateHotShards).
+     * <p>
+     * range iterates over the shards one after the other, every shard is read atomically. rank and select lock all
+     * the shards (in order) for a moment and use the sizes of the shards.
+     */
+    public static class ShardedTree implements Closeable {
+        private final Shard[] shards;
+        private volatile int[] bounds; // the lo of every shard, for routing
+        private final Thread migrator;
+        private volatile boolean closed;
+
+        /**
+         * public ShardedTree(int numOfShards, long migrateMillis)
+         * <p>
+         * Creates an empty map. If migrateMillis is 0, there is no background thread and the shards
+         * are only migrated by calls to migrateHotShards.
+         */
+        public ShardedTree(int numOfShards, long migrateMillis) {
+            if(numOfShards <= 0 || migrateMillis < 0)
+                throw new IllegalArgumentException("numOfShards must be positive and migrateMillis non-negative");
+            this.shards = new Shard[numOfShards];
+            this.bounds = new int[numOfShards];
+            long span = ((long) Integer.MAX_VALUE + numOfShards) / numOfShards;
+            for(int i = 0; i < numOfShards; i++) {
+                long hi = i == numOfShards - 1 ? (long) Integer.MAX_VALUE + 1 : (i + 1) * span;
+                this.shards[i] = new Shard((int) (i * span), hi);
+                this.bounds[i] = (int) (i * span);
+            }
+            if(migrateMillis > 0) {
+                this.migrator = new Thread(() -> {
+                    while(!this.closed) {
+                        try {
+                            Thread.sleep(migrateMillis);
+                        } catch(InterruptedException e) {
+                            return;
+                        }
+                        migrateHotShards();
+                    }
+                }, "ShardedTree migrator");
+                this.migrator.setDaemon(true);
+                this.migrator.start();
+            } else
+                this.migrator = null;
+        }
+
+        /**
+         * public int insert(int k, String i)
+         * <p>
+         * Like AVLTree.insert.
+         * precondition: k >= 0
+         */
+        public int insert(int k, String i) {
+            if(k < 0)
+                throw new IllegalArgumentException("keys must be non-negative");
+            Shard s = lockShard(k);
+            try {
+                s.ops++;
+                int res = s.tree.insert(k, i);
+                s.size = s.tree.size();
+                return res;
+            } finally {
+                s.lock.unlock();
+            }
+        }
+
+        /**
+         * public int delete(int k)
+         * <p>
+         * Like AVLTree.delete.
+         */
+        public int delete(int k) {
+            if(k < 0)
+                return -1;
+            Shard s = lockShard(k);
+            try {
+                s.ops++;
+                int res = s.tree.delete(k);
+                s.size = s.tree.size();
+                return res;
+            } finally {
+                s.lock.unlock();
+            }
+        }
+
+        /**
+         * public String search(int k)
+         * <p>
+         * Like AVLTree.search.
+         */
+        public String search(int k) {
+            if(k < 0)
+                return null;
+            Shard s = lockShard(k);
+            try {
+                s.ops++;
+                return s.tree.search(k);
+            } finally {
+                s.lock.unlock();
+            }
+        }
+
+        /**
+         * public int size()
+         * <p>
+         * Returns the number of items, without locking (so it may be off while other threads write).
+         */
+        public int size() {
+            int res = 0;
+            for(Shard s : this.shards)
+                res += s.size;
+            return res;
+        }
+
+        /**
+         * public int rank(int k)
+         * <p>
+         * Returns the number of keys smaller than k.
+         * Time Complexity: O(number of shards + log n)
+         */
+        public int rank(int k) {
+            lockAll();
+            try {
+                int res = 0;
+                for(Shard s : this.shards) {
+                    if(s.hi <= k)
+                        res += s.size;
+                    else {
+                        if(s.lo < k)
+                            res += rankIn(s.tree, k);
+                        break;
+                    }
+                }
+                return res;
+            } finally {
+                unlockAll();
+            }
+        }
+
+        /**
+         * public int select(int r)
+         * <p>
+         * Returns the r-th smallest key (starting from 0).
+         * precondition: 0 <= r < size()
+         * Time Complexity: O(number of shards + log n)
+         */
+        public int select(int r) {
+            lockAll();
+            try {
+                if(r >= 0) {
+                    for(Shard s : this.shards) {
+                        if(r < s.size)
+                            return selectIn(s.tree, r).getKey();
+                        r -= s.size;
+                    }
+                }
+                throw new IndexOutOfBoundsException("rank out of range");
+            } finally {
+                unlockAll();
+            }
+        }
+
+        /**
+         * public Iterator<IAVLNode> range(int lo, int hi)
+         * <p>
+         * Returns an iterator over the items with lo <= key <= hi in ascending order. The items of a shard are
+         * collected when the iterator reaches the shard, so concurrent changes to later shards may be seen.
+         */
+        public Iterator<IAVLNode> range(int lo, int hi) {
+            return new Iterator<IAVLNode>() {
+                private final ArrayList<AVLNode> items = new ArrayList<>();
+                private int next;
+                private long from = Math.max(lo, 0); // the first key that wasn't collected yet
+
+                { load(); }
+
+                private void load() { // collects the next shard that has items in the range
+                    while(this.next == this.items.size() && this.from <= hi) {
+                        this.items.clear();
+                        this.next = 0;
+                        Shard s = lockShard((int) this.from);
+                        try {
+                            collect(s.tree.root, (int) this.from, hi, this.items);
+                            this.from = s.hi;
+                        } finally {
+                            s.lock.unlock();
+                        }
+                    }
+                }
+
+                public boolean hasNext() {
+                    return this.next < this.items.size();
+                }
+
+                public IAVLNode next() {
+                    if(!hasNext())
+                        throw new NoSuchElementException();
+                    AVLNode res = this.items.get(this.next++);
+                    load();
+                    return res;
+                }
+            };
+        }
+
+        /**
+         * public void migrateHotShards()
+         * <p>
+         * Moves half of the keys of the busiest shard to its less busy neighbour, if the busiest shard had more than
+         * twice its operations since the last call. The keys are moved with one split and one join (plus a delete
+         * and two inserts), so it takes O(log n) while the two shards are locked.
+         */
+        public synchronized void migrateHotShards() {
+            long[] ops = new long[this.shards.length];
+            for(int i = 0; i < this.shards.length; i++) {
+                Shard s = this.shards[i];
+                s.lock.lock();
+                ops[i] = s.ops;
+                s.ops = 0;
+                s.lock.unlock();
+            }
+            int hot = 0;
+            for(int i = 1; i < ops.length; i++)
+                if(ops[i] > ops[hot])
+                    hot = i;
+            int to;
+            if(hot == 0)
+                to = 1;
+            else if(hot == ops.length - 1)
+                to = hot - 1;
+            else
+                to = ops[hot - 1] <= ops[hot + 1] ? hot - 1 : hot + 1;
+            if(to >= ops.length || ops[hot] <= 2 * ops[to])
+                return;
+            Shard low = this.shards[Math.min(hot, to)], high = this.shards[Math.max(hot, to)];
+            low.lock.lock();
+            high.lock.lock();
+            try {
+                Shard s = this.shards[hot];
+                if(s.size < 2)
+                    return;
+                if(to > hot) { // the upper half of s goes to high
+                    int x = selectIn(s.tree, s.size / 2).getKey();
+                    AVLTree[] parts = s.tree.splitAt(new int[] {x});
+                    low.tree = parts[0];
+                    high.tree = joinAll(new AVLTree[] {parts[1], high.tree});
+                    low.hi = x;
+                    high.lo = x;
+                } else { // the lower half of s goes to low
+                    int x = selectIn(s.tree, s.size / 2 - 1).getKey();
+                    AVLTree[] parts = s.tree.splitAt(new int[] {x + 1});
+                    low.tree = joinAll(new AVLTree[] {low.tree, parts[0]});
+                    high.tree = parts[1];
+                    low.hi = x + 1;
+                    high.lo = x + 1;
+                }
+                low.size = low.tree.size();
+                high.size = high.tree.size();
+                int[] newBounds = this.bounds.clone();
+                newBounds[hot < to ? to : hot] = high.lo;
+                this.bounds = newBounds;
+            } finally {
+                high.lock.unlock();
+                low.lock.unlock();
+            }
+        }
+
+        /**
+         * public int[] shardSizes()
+         * <p>
+         * Returns the number of items in every shard.
+         */
+        public int[] shardSizes() {
+            int[] res = new int[this.shards.length];
+            for(int i = 0; i < res.length; i++)
+                res[i] = this.shards[i].size;
+            return res;
+        }
+
+        /**
+         * public void close()
+         * <p>
+         * Stops the background thread.
+         */
+        public void close() {
+            this.closed = true;
+            if(this.migrator != null) {
+                this.migrator.interrupt();
+                try {
+                    this.migrator.join();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * private Shard lockShard(int k)
+         * <p>
+         * Locks and returns the shard of k. The routing table may be stale, so the bounds of the shard are checked
+         * again under its lock.
+         */
+        private Shard lockShard(int k) {
+            while(true) {
+                int[] b = this.bounds;
+                int lo = 0, hi = b.length - 1;
+                while(lo < hi) {
+                    int mid = (lo + hi + 1) >>> 1;
+                    if(b[mid] <= k)
+                        lo = mid;
+                    else
+                        hi = mid - 1;
+                }
+                Shard s = this.shards[lo];
+                s.lock.lock();
+                if(s.lo <= k && k < s.hi)
+                    return s;
+                s.lock.unlock();
+            }
+        }
+
+        private void lockAll() {
+            for(Shard s : this.shards)
+                s.lock.lock();
+        }
+
+        private void unlockAll() {
+            for(Shard s : this.shards)
+                s.lock.unlock();
+        }
+
+        /**
+         * private static int rankIn(AVLTree t, int k)
+         * <p>
+         * Returns the number of keys of t smaller than k.
+         */
+        private static int rankIn(AVLTree t, int k) {
+            int res = 0;
+            AVLNode x = t.root;
+            while(x.isRealNode()) {
+                if(k <= x.getKey())
+                    x = x.left;
+                else {
+                    res += x.left.getSize() + 1;
+                    x = x.right;
+                }
+            }
+            return res;
+        }
+
+        /**
+         * private static AVLNode selectIn(AVLTree t, int r)
+         * <p>
+         * Returns the node of the r-th smallest key of t.
+         * precondition: 0 <= r < t.size()
+         */
+        private static AVLNode selectIn(AVLTree t, int r) {
+            AVLNode x = t.root;
+            while(true) {
+                int leftSize = x.left.getSize();
+                if(r == leftSize)
+                    return x;
+                if(r < leftSize)
+                    x = x.left;
+                else {
+                    r -= leftSize + 1;
+                    x = x.right;
+                }
+            }
+        }
+
+        private static void collect(AVLNode x, int lo, int hi, List<AVLNode> out) {
+            if(!x.isRealNode())
+                return;
+            if(lo < x.getKey())
+                collect(x.left, lo, hi, out);
+            if(lo <= x.getKey() && x.getKey() <= hi)
+                out.add(x);
+            if(x.getKey() < hi)
+                collect(x.right, lo, hi, out);
+        }
+
+        /**
+         * private static class Shard
+         * <p>
+         * The tree of the keys in [lo, hi), all the fields except size are guarded by lock.
+         */
+        private static class Shard {
+            final ReentrantLock lock = new ReentrantLock();
+            AVLTree tree = new AVLTree();
+            int lo;
+            long hi;
+            long ops; // operations since the last migrateHotShards
+            volatile int size;
+
+            Shard(int lo, long hi) {
+                this.lo = lo;
+                this.hi = hi;
+            }
+        }
+    }
+
+    /**
+     * public static class ArenaTree
+     * <p>
+     * An AVLTree that keeps the info of its items as UTF-8 bytes in a ValueArena instead of separate Strings:
+     * a node holds the reference of its value in the arena, and getValue decodes it when it's read
+     * (search, infoToArray, toArrays, ...). With dedup, equal values are stored once.
+     * <p>
+     * Deleted values stay in the arena until compactValues. The trees made by split share the arena of the tree,
+     * nodes given to join keep their Strings.
+     */
+    public static class ArenaTree extends AVLTree {
+        private ValueArena arena;
+
+        public ArenaTree(boolean dedup) {
+            this(new ValueArena(dedup));
+        }
+
+        private ArenaTree(ValueArena arena) {
+            super();
+            this.arena = arena;
+        }
+
+        /**
+         * public int insert(int k, String i)
+         * <p>
+         * Like AVLTree.insert, with i stored in the arena.
+         */
+        public int insert(int k, String i) {
+            if(this.trace != null)
+                this.trace.treeInsert(this, k, i);
+            if(treePosition(k, this.root).getKey() == k) // don't add the value to the arena
+                return -1;
+            return insert(new ArenaNode(k, this.arena, this.arena.add(i)));
+        }
+
+        /**
+         * public void compactValues()
+         * <p>
+         * Moves the values of the tree to a new arena, leaving behind the space of deleted values
+         * (and of the values of other trees that shared the arena). The old arena is freed by the garbage collector
+         * once no tree uses it.
+         * Time Complexity: O(n + total length of the values)
+         */
+        public void compactValues() {
+            ValueArena compacted = new ValueArena(this.arena.dedup);
+            ArrayDeque<AVLNode> stack = new ArrayDeque<>();
+            if(this.root.isRealNode())
+                stack.push(this.root);
+            while(!stack.isEmpty()) {
+                AVLNode x = stack.pop();
+                if(x instanceof ArenaNode) {
+                    ArenaNode a = (ArenaNode) x;
+                    a.ref = compacted.copyFrom(a.arena, a.ref);
+                    a.arena = compacted;
+                }
+                if(x.left.isRealNode())
+                    stack.push(x.left);
+                if(x.right.isRealNode())
+                    stack.push(x.right);
+            }
+            this.arena = compacted;
+        }
+
+        /**
+         * public long arenaBytes()
+         * <p>
+         * Returns the number of bytes allocated by the arena of the tree.
+         */
+        public long arenaBytes() {
+            return this.arena.bytes();
+        }
+
+        protected AVLTree newTree(AVLNode root) {
+            ArenaTree t = new ArenaTree(this.arena);
+            if(root != null) {
+                t.root = root;
+                t.min = t.minNode(root);
+                t.max = t.maxNode(root);
+            }
+            return t;
+        }
+    }
+
+    /**
+     * public static class ArenaNode
+     * <p>
+     * A node whose info is kept in a ValueArena.
+     */
+    public static class ArenaNode extends AVLNode {
+        ValueArena arena;
+        long ref;
+
+        ArenaNode(int key, ValueArena arena, long ref) {
+            super(key, null);
+            this.arena = arena;
+            this.ref = ref;
+        }
+
+        public String getValue() {
+            return this.arena.get(this.ref);
+        }
+
+        public void setValue(String value) {
+            this.ref = this.arena.add(value);
+        }
+    }
+
+    /**
+     * public static class ValueArena
+     * <p>
+     * Append-only storage of Strings as [varint length][UTF-8 bytes] in byte[] pages. A value is referred to by a
+     * long: the page in the high 32 bits and the offset in the low 32 bits, -1 for null.
+     * With dedup, an open-addressing table of references (hashed by the bytes) finds values that were already added.
+     */
+    public static class ValueArena {
+        private static final int PAGE_SIZE = 1 << 16;
+        private final boolean dedup;
+        private byte[][] pages = new byte[4][];
+        private int numOfPages;
+        private int used; // bytes used in the last page
+        private long bytes;
+        private long[] table; // reference + 1 of the values, 0 for empty slots
+        private int entries;
+
+        public ValueArena(boolean dedup) {
+            this.dedup = dedup;
+            if(dedup)
+                this.table = new long[64];
+        }
+
+        /**
+         * public long add(String value)
+         * <p>
+         * Stores value and returns its reference.
+         * Time Complexity: O(length of value)
+         */
+        public long add(String value) {
+            if(value == null)
+                return -1;
+            byte[] b = value.getBytes(StandardCharsets.UTF_8);
+            return add(b, 0, b.length);
+        }
+
+        /**
+         * public String get(long ref)
+         * <p>
+         * Decodes the value of ref.
+         */
+        public String get(long ref) {
+            if(ref == -1)
+                return null;
+            byte[] page = this.pages[(int) (ref >>> 32)];
+            int length = lengthAt(page, (int) ref);
+            return new String(page, (int) ref + varintLength(length), length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * public long bytes()
+         * <p>
+         * Returns the number of bytes allocated for pages.
+         */
+        public long bytes() {
+            return this.bytes;
+        }
+
+        /**
+         * long copyFrom(ValueArena other, long ref)
+         * <p>
+         * Adds the value of ref in other, without decoding it.
+         */
+        long copyFrom(ValueArena other, long ref) {
+            if(ref == -1)
+                return -1;
+            byte[] page = other.pages[(int) (ref >>> 32)];
+            int length = lengthAt(page, (int) ref);
+            return add(page, (int) ref + varintLength(length), length);
+        }
+
+        private long add(byte[] b, int from, int length) {
+            int slot = 0;
+            if(this.dedup) {
+                int mask = this.table.length - 1;
+                for(slot = hash(b, from, length) & mask; this.table[slot] != 0; slot = (slot + 1) & mask)
+                    if(equalsAt(this.table[slot] - 1, b, from, length))
+                        return this.table[slot] - 1;
+            }
+            int need = varintLength(length) + length;
+            if(this.numOfPages == 0 || this.used + need > this.pages[this.numOfPages - 1].length) {
+                if(this.numOfPages == this.pages.length)
+                    this.pages = Arrays.copyOf(this.pages, 2 * this.numOfPages);
+                this.pages[this.numOfPages++] = new byte[Math.max(PAGE_SIZE, need)];
+                this.bytes += Math.max(PAGE_SIZE, need);
+                this.used = 0;
+            }
+            byte[] page = this.pages[this.numOfPages - 1];
+            long ref = (long) (this.numOfPages - 1) << 32 | this.used;
+            int v = length;
+            while(v >= 0x80) {
+                page[this.used++] = (byte) (v | 0x80);
+                v >>>= 7;
+            }
+            page[this.used++] = (byte) v;
+            System.arraycopy(b, from, page, this.used, length);
+            this.used += length;
+            if(this.dedup) {
+                this.table[slot] = ref + 1;
+                if(++this.entries * 2 > this.table.length)
+                    growTable();
+            }
+            return ref;
+        }
+
+        private boolean equalsAt(long ref, byte[] b, int from, int length) {
+            byte[] page = this.pages[(int) (ref >>> 32)];
+            if(lengthAt(page, (int) ref) != length)
+                return false;
+            int offset = (int) ref + varintLength(length);
+            return Arrays.equals(page, offset, offset + length, b, from, from + length);
+        }
+
+        private void growTable() {
+            long[] old = this.table;
+            this.table = new long[2 * old.length];
+            int mask = this.table.length - 1;
+            for(long entry : old) {
+                if(entry == 0)
+                    continue;
+                byte[] page = this.pages[(int) ((entry - 1) >>> 32)];
+                int length = lengthAt(page, (int) (entry - 1));
+                int slot = hash(page, (int) (entry - 1) + varintLength(length), length) & mask;
+                while(this.table[slot] != 0)
+                    slot = (slot + 1) & mask;
+                this.table[slot] = entry;
+            }
+        }
+
+        private static int hash(byte[] b, int from, int length) {
+            int h = 1;
+            for(int i = from; i < from + length; i++)
+                h = 31 * h + b[i];
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * private static int lengthAt(byte[] page, int offset)
+         * <p>
+         * Reads the varint length of the value at offset.
+         */
+        private static int lengthAt(byte[] page, int offset) {
+            int length = 0;
+            for(int shift = 0; ; shift += 7) {
+                byte b = page[offset++];
+                length |= (b & 0x7f) << shift;
+                if(b >= 0)
+                    return length;
+            }
+        }
+
+        private static int varintLength(int v) {
+            int n = 1;
+            while(v >= 0x80) {
+                v >>>= 7;
+                n++;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * public static class SearchCache
+     * <p>
+     * A small cache from keys to nodes in front of AVLTree.search, for skewed lookups. It is 2-way set associative
+     * with CLOCK-like admission: a hit sets the referenced bit of its entry, and a missed key takes an empty entry
+     * of its set, or else an entry that wasn't referenced since the last miss in the set (the one under the clock
+     * hand of the set if neither was). If both entries were referenced, the key isn't admitted and their bits are
+     * cleared, so one-off keys don't push out the hot ones.
+     * Only keys in the tree are cached, so inserts don't need to touch it.
+     */
+    public static class SearchCache {
+        private static final int EMPTY = -1; // keys are non-negative
+        private final int[] keys;
+        private final AVLNode[] nodes;
+        private final boolean[] referenced;
+        private final boolean[] hand; // per set: true if the clock hand is on the second entry
+        private final int setMask;
+        private long hits, misses;
+
+        SearchCache(int capacity) {
+            int sets = Integer.highestOneBit(Math.max(capacity / 2, 1));
+            this.keys = new int[2 * sets];
+            this.nodes = new AVLNode[2 * sets];
+            this.referenced = new boolean[2 * sets];
+            this.hand = new boolean[sets];
+            this.setMask = sets - 1;
+            Arrays.fill(this.keys, EMPTY);
+        }
+
+        /**
+         * AVLNode get(int k)
+         * <p>
+         * Returns the cached node of k, or null (counting a hit or a miss).
+         */
+        AVLNode get(int k) {
+            int i = setOf(k);
+            if(k < 0 || this.keys[i] != k && this.keys[++i] != k) { // a negative key would match the EMPTY entries
+                this.misses++;
+                return null;
+            }
+            this.hits++;
+            this.referenced[i] = true;
+            return this.nodes[i];
+        }
+
+        void admit(int k, AVLNode x) {
+            int i = setOf(k);
+            if(this.keys[i] != EMPTY && this.keys[i + 1] == EMPTY)
+                i++;
+            else if(this.keys[i] != EMPTY) {
+                if(this.referenced[i] && this.referenced[i + 1]) { // second chance for both
+                    this.referenced[i] = false;
+                    this.referenced[i + 1] = false;
+                    return;
+                }
+                boolean second = this.referenced[i] || !this.referenced[i + 1] && this.hand[i >> 1];
+                this.hand[i >> 1] = !second; // the hand moves past the replaced entry
+                if(second)
+                    i++;
+            }
+            this.keys[i] = k;
+            this.nodes[i] = x;
+            this.referenced[i] = false;
+        }
+
+        void invalidate(int k) {
+            int i = setOf(k);
+            if(this.keys[i] != k)
+                i++;
+            if(this.keys[i] == k) {
+                this.keys[i] = EMPTY;
+                this.nodes[i] = null;
+                this.referenced[i] = false;
+            }
+        }
+
+        void clear() {
+            Arrays.fill(this.keys, EMPTY);
+            Arrays.fill(this.nodes, null);
+            Arrays.fill(this.referenced, false);
+            Arrays.fill(this.hand, false);
+        }
+
+        private int setOf(int k) {
+            int h = k * 0x9E3779B9;
+            return ((h ^ (h >>> 16)) & this.setMask) << 1;
+        }
+
+        /**
+         * public int capacity()
+         * <p>
+         * Returns the number of entries.
+         */
+        public int capacity() {
+            return this.keys.length;
+        }
+
+        public long hits() {
+            return this.hits;
+        }
+
+        public long misses() {
+            return this.misses;
+        }
+
+        /**
+         * public double hitRate()
+         * <p>
+         * Returns hits / (hits + misses), or 0 before the first search.
+         */
+        public double hitRate() {
+            long total = this.hits + this.misses;
+            return total == 0 ? 0 : (double) this.hits / total;
+        }
+
+        /**
+         * public void resetStatistics()
+         * <p>
+         * Zeroes the hit and miss counters.
+         */
+        public void resetStatistics() {
+            this.hits = 0;
+            this.misses = 0;
+        }
+    }
+
+    /**
+     * public static class RelaxedTree
+     * <p>
+     * An AVLTree with relaxed balance: insert and delete only change the links around the key (like an unbalanced
+     * binary search tree) and remember the parent of the change. The heights, sizes and rotations of the paths
+     * to the root are deferred to rebalanceNow, which is called explicitly, or by an update once maxPending changes
+     * are waiting. search is correct at all times, and since every deferred insert adds at most one level,
+     * the height stays below the AVL height plus maxPending.
+     * <p>
+     * rebalanceNow marks the paths (with a DIRTY height, the heights on them are recomputed anyway) and fixes them
+     * bottom-up, so a node shared by many paths is fixed once. A node with
+     * a balance factor of 2 is fixed with the usual rotations, a node that is further off joins its two (already
+     * fixed) sub-trees like join does, in O(|balance factor|) rotations.
+     * Operations that need sizes or heights (toArrays, split, join, aggregate) call rebalanceNow first.
+     */
+    public static class RelaxedTree extends AVLTree {
+        private static final int DIRTY = -2; // the height of a marked node during rebalanceNow
+        private final int maxPending;
+        private final ArrayList<AVLNode> pending = new ArrayList<>(); // parents of deferred changes
+        private int count;
+        private boolean strict; // true while the operations of AVLTree run with immediate balancing
+
+        public RelaxedTree(int maxPending) {
+            super();
+            if(maxPending <= 0)
+                throw new IllegalArgumentException("maxPending must be positive");
+            this.maxPending = maxPending;
+        }
+
+        /**
+         * protected int insert(AVLNode toInsert)
+         * <p>
+         * Inserts the node as a leaf without balancing. Returns 0, or -1 if the key already exists.
+         */
+        protected int insert(AVLNode toInsert) {
+            if(this.strict)
+                return super.insert(toInsert);
+            int k = toInsert.getKey();
+            if(empty()) {
+                super.insert(toInsert);
+                this.count = 1;
+                return 0;
+            }
+            AVLNode y; // a key past max or min hangs below it, so sorted inserts don't walk down the deferred chain
+            if(k > this.max.getKey())
+                y = this.max;
+            else if(k < this.min.getKey())
+                y = this.min;
+            else
+                y = treePosition(k, this.root);
+            if(y.getKey() == k)
+                return -1;
+            if(y.getKey() < k)
+                y.setRight(toInsert);
+            else
+                y.setLeft(toInsert);
+            toInsert.setHeight(0);
+            toInsert.setSize(1);
+            updateAggregate(toInsert);
+            if(k > this.max.getKey())
+                this.max = toInsert;
+            if(k < this.min.getKey())
+                this.min = toInsert;
+            this.count++;
+            defer(y);
+            return 0;
+        }
+
+        /**
+         * public int delete(int k)
+         * <p>
+         * Deletes the item with key k without balancing. Returns 0, or -1 if there is no item with key k.
+         */
+        public int delete(int k) {
+            if(this.trace != null)
+                this.trace.treeDelete(this, k);
+            AVLNode x = treePosition(k, this.root);
+            if(!x.isRealNode() || x.getKey() != k)
+                return -1;
+            if(this.cache != null)
+                this.cache.invalidate(k);
+            if(this.count == 1) {
+                this.root = new AVLNode();
+                this.min = null;
+                this.max = null;
+                this.count = 0;
+                this.pending.clear();
+                return 0;
+            }
+            AVLNode parent = x.parent;
+            AVLNode changed; // the lowest node whose sub-tree changed
+            AVLNode replacement;
+            if(!x.left.isRealNode() || !x.right.isRealNode()) {
+                replacement = x.left.isRealNode() ? x.left : x.right;
+                changed = parent;
+            } else { // the successor takes the place of x
+                replacement = minNode(x.right);
+                changed = replacement.parent == x ? replacement : replacement.parent;
+                if(replacement.parent != x) {
+                    replacement.parent.setLeft(replacement.right);
+                    replacement.setRight(x.right);
+                }
+                replacement.setLeft(x.left);
+            }
+            if(parent == null) {
+                replacement.setParent(null);
+                this.root = replacement;
+            } else if(isRightChild(parent, x))
+                parent.setRight(replacement);
+            else
+                parent.setLeft(replacement);
+            x.parent = null;
+            x.setLeft(new AVLNode());
+            x.setRight(new AVLNode());
+            if(x == this.min)
+                this.min = minNode(this.root);
+            if(x == this.max)
+                this.max = maxNode(this.root);
+            this.count--;
+            if(changed != null)
+                defer(changed);
+            return 0;
+        }
+
+        public int size() {
+            return this.count;
+        }
+
+        /**
+         * public int pending()
+         * <p>
+         * Returns the number of deferred changes.
+         */
+        public int pending() {
+            return this.pending.size();
+        }
+
+        /**
+         * public void rebalanceNow()
+         * <p>
+         * Restores the heights, sizes and AVL balance of the paths of all the deferred changes.
+         * Time Complexity: O(number of nodes on the paths * log n), O(maxPending * log maxPending) for a chain of
+         * sorted inserts
+         */
+        public void rebalanceNow() {
+            if(this.pending.isEmpty())
+                return;
+            for(AVLNode x : this.pending) { // mark the paths, stopping at paths that were already marked
+                while(x != null && x.getHeight() != DIRTY) {
+                    x.setHeight(DIRTY);
+                    x = x.parent;
+                }
+            }
+            this.pending.clear();
+            if(this.root.getHeight() != DIRTY)
+                return;
+            ArrayDeque<AVLNode> stack = new ArrayDeque<>(); // post-order without recursion, the paths may be long
+            stack.push(this.root);
+            while(true) {
+                AVLNode x = stack.peek();
+                if(x.left.getHeight() == DIRTY)
+                    stack.push(x.left);
+                else if(x.right.getHeight() == DIRTY)
+                    stack.push(x.right);
+                else {
+                    stack.pop();
+                    x = fix(x); // links the fixed sub-tree to the parent, which is still on the stack
+                    if(stack.isEmpty()) {
+                        this.root = x;
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * private AVLNode fix(AVLNode x)
+         * <p>
+         * Fixes the dirty node x, whose children were fixed already, and returns the root of its sub-tree.
+         */
+        private AVLNode fix(AVLNode x) {
+            refresh(x);
+            int bf = getBF(x);
+            if(Math.abs(bf) <= 1)
+                return x;
+            if(Math.abs(bf) == 2) { // the children are AVL trees, so rotations are enough
+                rebalance(x);
+                return x.parent;
+            }
+            AVLNode parent = x.parent;
+            boolean isRight = parent != null && isRightChild(parent, x);
+            AVLNode left = x.left, right = x.right;
+            left.setParent(null);
+            right.setParent(null);
+            x.setLeft(new AVLNode());
+            x.setRight(new AVLNode());
+            AVLNode joined = link(left, x, right);
+            if(parent == null)
+                joined.setParent(null);
+            else if(isRight)
+                parent.setRight(joined);
+            else
+                parent.setLeft(joined);
+            return joined;
+        }
+
+        /**
+         * private AVLNode link(AVLNode left, AVLNode x, AVLNode right)
+         * <p>
+         * Joins the AVL trees left and right (without parents) and the detached node x between them, like join:
+         * x takes the place of the node on the inner spine of the higher tree that is as high as the other tree,
+         * and the path above it is retraced with rotations. Returns the root of the result.
+         * precondition: |left.height - right.height| > 1
+         * Time Complexity: O(|left.height - right.height|)
+         */
+        private AVLNode link(AVLNode left, AVLNode x, AVLNode right) {
+            int hl = left.getHeight(), hr = right.getHeight();
+            AVLNode b = hl > hr ? left : right;
+            while(b.getHeight() > Math.min(hl, hr) + 1)
+                b = hl > hr ? b.right : b.left;
+            AVLNode c = b.parent;
+            if(hl > hr) {
+                x.setLeft(b);
+                x.setRight(right);
+                c.setRight(x);
+            } else {
+                x.setLeft(left);
+                x.setRight(b);
+                c.setLeft(x);
+            }
+            refresh(x);
+            AVLNode top = hl > hr ? left : right;
+            for(AVLNode y = c; ; y = y.parent) {
+                refresh(y);
+                boolean last = y == top;
+                if(Math.abs(getBF(y)) == 2) {
+                    rebalance(y);
+                    y = y.parent; // the new root of y's sub-tree
+                }
+                if(last)
+                    return y;
+            }
+        }
+
+        private void refresh(AVLNode x) {
+            updateHeight(x);
+            x.setSize(x.left.getSize() + x.right.getSize() + 1);
+            updateAggregate(x);
+        }
+
+        public void toArrays(int[] keys, String[] values) {
+            rebalanceNow();
+            super.toArrays(keys, values);
+        }
+
+        public int[] keysToArray() {
+            rebalanceNow(); // the recursive export would go down the deferred chains
+            return super.keysToArray();
+        }
+
+        public String[] infoToArray() {
+            rebalanceNow();
+            return super.infoToArray();
+        }
+
+        /**
+         * public String searchRec(AVLNode root, int k)
+         * <p>
+         * Like AVLTree.searchRec, without recursion, since a deferred chain may be maxPending nodes deep.
+         */
+        public String searchRec(AVLNode root, int k) {
+            AVLNode x = treePosition(k, root);
+            return x.isRealNode() && x.getKey() == k ? x.getValue() : null;
+        }
+
+        protected AVLNode minNode(AVLNode x) {
+            while(x.left.isRealNode())
+                x = x.left;
+            return x;
+        }
+
+        protected AVLNode maxNode(AVLNode x) {
+            while(x.right.isRealNode())
+                x = x.right;
+            return x;
+        }
+
+        public void toArraysParallel(int[] keys, String[] values) {
+            rebalanceNow();
+            super.toArraysParallel(keys, values);
+        }
+
+        public <A> A aggregate(int lo, int hi) {
+            rebalanceNow();
+            return super.aggregate(lo, hi);
+        }
+
+        public AVLTree[] splitByRank(int k) {
+            rebalanceNow(); // the ranks are found with the sizes of the nodes
+            return super.splitByRank(k);
+        }
+
+        /**
+         * public AVLTree[] split(int x)
+         * <p>
+         * Like AVLTree.split, the two trees are relaxed as well.
+         */
+        public AVLTree[] split(int x) {
+            rebalanceNow();
+            this.strict = true;
+            try {
+                return super.split(x);
+            } finally {
+                this.strict = false;
+            }
+        }
+
+        public int join(IAVLNode x, AVLTree t) {
+            rebalanceNow();
+            RelaxedTree relaxed = t instanceof RelaxedTree ? (RelaxedTree) t : null;
+            if(relaxed != null) {
+                relaxed.rebalanceNow();
+                relaxed.strict = true;
+            }
+            this.strict = true;
+            try {
+                int res = super.join(x, t);
+                this.count = this.root.getSize();
+                return res;
+            } finally {
+                this.strict = false;
+                if(relaxed != null)
+                    relaxed.strict = false;
+            }
+        }
+
+        protected AVLTree newTree(AVLNode root) {
+            RelaxedTree t = new RelaxedTree(this.maxPending);
+            t.monoid = this.monoid;
+            if(root != null) {
+                t.root = root;
+                t.min = t.minNode(root);
+                t.max = t.maxNode(root);
+                t.count = root.getSize();
+            }
+            return t;
+        }
+
+        /**
+         * private void defer(AVLNode x)
+         * <p>
+         * Remembers that x's sub-tree changed, and rebalances if maxPending changes are waiting.
+         */
+        private void defer(AVLNode x) {
+            this.pending.add(x);
+            if(this.pending.size() >= this.maxPending)
+                rebalanceNow();
+        }
+    }
+
+    /**
+     * public static class HashedTree
+     * <p>
+     * An AVLTree paired with a hash index from keys to nodes (IntNodeIndex), so that search, delete and update
+     * of a key find its node in O(1) expected time instead of descending the tree. The ordered operations
+     * (min, max, successor, split, join, ...) use the tree as usual.
+     * <p>
+     * The index is kept in sync by insert, delete, split and join. split builds an index only for the smaller
+     * part and leaves the rest of the index to the bigger part, and join adds the smaller index to the bigger one,
+     * so both cost O(min(part sizes)) on top of the tree operation.
+     * The tree isn't augmented, since update changes values in place.
+     */
+    public static class HashedTree extends AVLTree {
+        private IntNodeIndex index; // null while split builds the tree
+        private boolean splitting; // true while super.split builds the parts, which get their indexes afterwards
+
+        public HashedTree() {
+            super();
+            this.index = new IntNodeIndex(16);
+        }
+
+        private HashedTree(AVLNode root) {
+            super();
+            if(root != null) {
+                this.root = root;
+                this.min = minNode(root);
+                this.max = maxNode(root);
+            }
+        }
+
+        /**
+         * public String search(int k)
+         * <p>
+         * Like AVLTree.search, in O(1) expected time.
+         */
+        public String search(int k) {
+            if(this.trace != null)
+                this.trace.treeSearch(this, k);
+            AVLNode x = this.index.get(k);
+            return x == null ? null : x.getValue();
+        }
+
+        protected int insert(AVLNode toInsert) {
+            int res = super.insert(toInsert);
+            if(res != -1 && this.index != null)
+                this.index.put(toInsert.getKey(), toInsert);
+            return res;
+        }
+
+        /**
+         * public int delete(int k)
+         * <p>
+         * Like AVLTree.delete, the node is found through the index.
+         */
+        public int delete(int k) {
+            if(this.trace != null)
+                this.trace.treeDelete(this, k);
+            AVLNode x = this.index.get(k);
+            if(x == null)
+                return -1;
+            this.index.remove(k);
+            return delete(x);
+        }
+
+        /**
+         * public boolean update(int k, String i)
+         * <p>
+         * Sets the info of the existing key k to i. Returns false if k isn't in the tree.
+         * Time Complexity: O(1) expected
+         */
+        public boolean update(int k, String i) {
+            AVLNode x = this.index.get(k);
+            if(x == null)
+                return false;
+            x.setValue(i);
+            return true;
+        }
+
+        /**
+         * public AVLTree[] split(int x)
+         * <p>
+         * Like AVLTree.split, the two trees are HashedTrees with their own indexes.
+         */
+        public AVLTree[] split(int x) {
+            AVLTree[] parts;
+            this.splitting = true;
+            try {
+                parts = super.split(x);
+            } finally {
+                this.splitting = false;
+            }
+            this.index.remove(x);
+            HashedTree small = (HashedTree) parts[0], big = (HashedTree) parts[1];
+            if(small.size() > big.size()) {
+                HashedTree temp = small;
+                small = big;
+                big = temp;
+            }
+            IntNodeIndex smallIndex = new IntNodeIndex(2 * small.size());
+            forEachNode(small.root, node -> {
+                this.index.remove(node.getKey());
+                smallIndex.put(node.getKey(), node);
+            });
+            small.index = smallIndex;
+            big.index = this.index;
+            this.index = new IntNodeIndex(16);
+            return parts;
+        }
+
+        /**
+         * public int join(IAVLNode x, AVLTree t)
+         * <p>
+         * Like AVLTree.join. If t is a HashedTree, the smaller of the two indexes is added to the bigger one.
+         */
+        public int join(IAVLNode x, AVLTree t) {
+            if(this.index == null) // a part being built by split
+                return super.join(x, t);
+            IntNodeIndex other = null;
+            if(t instanceof HashedTree) {
+                other = ((HashedTree) t).index;
+                ((HashedTree) t).index = new IntNodeIndex(16);
+            } else { // index the nodes of t
+                IntNodeIndex target = this.index;
+                forEachNode(t.root, node -> target.put(node.getKey(), node));
+            }
+            int res = super.join(x, t);
+            if(other != null) {
+                if(other.size() > this.index.size()) {
+                    IntNodeIndex temp = other;
+                    other = this.index;
+                    this.index = temp;
+                }
+                this.index.putAll(other);
+            }
+            this.index.put(x.getKey(), (AVLNode) x);
+            return res;
+        }
+
+        /**
+         * protected AVLTree newTree(AVLNode root)
+         * <p>
+         * Returns a tree without an index while split builds its parts (split indexes them at the end),
+         * otherwise a tree with its own index, like the empty pieces of splitAt and splitByRank.
+         */
+        protected AVLTree newTree(AVLNode root) {
+            HashedTree t = new HashedTree(root);
+            if(!this.splitting) {
+                IntNodeIndex index = new IntNodeIndex(root == null ? 16 : 2 * root.getSize());
+                if(root != null)
+                    forEachNode(root, node -> index.put(node.getKey(), node));
+                t.index = index;
+            }
+            return t;
+        }
+
+        private static void forEachNode(AVLNode x, Consumer<AVLNode> action) {
+            if(!x.isRealNode())
+                return;
+            forEachNode(x.left, action);
+            action.accept(x);
+            forEachNode(x.right, action);
+        }
+    }
+
+    /**
+     * public static class IntNodeIndex
+     * <p>
+     * An open-addressing hash map from non-negative int keys to nodes, with linear probing
+     * and backward-shift deletion (no tombstones). The table is kept at most half full.
+     */
+    public static class IntNodeIndex {
+        private static final int EMPTY = -1;
+        private int[] keys;
+        private AVLNode[] nodes;
+        private int size;
+
+        public IntNodeIndex(int capacity) {
+            int n = Integer.highestOneBit(Math.max(2 * capacity - 1, 2)) << 1;
+            this.keys = new int[n];
+            this.nodes = new AVLNode[n];
+            Arrays.fill(this.keys, EMPTY);
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public AVLNode get(int k) {
+            int mask = this.keys.length - 1;
+            for(int i = slot(k, mask); this.keys[i] != EMPTY; i = (i + 1) & mask)
+                if(this.keys[i] == k)
+                    return this.nodes[i];
+            return null;
+        }
+
+        public void put(int k, AVLNode x) {
+            int mask = this.keys.length - 1;
+            int i = slot(k, mask);
+            while(this.keys[i] != EMPTY && this.keys[i] != k)
+                i = (i + 1) & mask;
+            if(this.keys[i] == EMPTY) {
+                this.keys[i] = k;
+                this.size++;
+            }
+            this.nodes[i] = x;
+            if(2 * this.size > this.keys.length)
+                resize(2 * this.keys.length);
+        }
+
+        public void putAll(IntNodeIndex other) {
+            for(int i = 0; i < other.keys.length; i++)
+                if(other.keys[i] != EMPTY)
+                    put(other.keys[i], other.nodes[i]);
+        }
+
+        /**
+         * public boolean remove(int k)
+         * <p>
+         * Removes k, and moves back the entries after it that can't be reached anymore.
+         */
+        public boolean remove(int k) {
+            int mask = this.keys.length - 1;
+            int i = slot(k, mask);
+            while(this.keys[i] != k) {
+                if(this.keys[i] == EMPTY)
+                    return false;
+                i = (i + 1) & mask;
+            }
+            for(int j = (i + 1) & mask; this.keys[j] != EMPTY; j = (j + 1) & mask) {
+                int home = slot(this.keys[j], mask);
+                if(((j - home) & mask) >= ((j - i) & mask)) { // j's home isn't between i and j
+                    this.keys[i] = this.keys[j];
+                    this.nodes[i] = this.nodes[j];
+                    i = j;
+                }
+            }
+            this.keys[i] = EMPTY;
+            this.nodes[i] = null;
+            this.size--;
+            return true;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = this.keys;
+            AVLNode[] oldNodes = this.nodes;
+            this.keys = new int[capacity];
+            this.nodes = new AVLNode[capacity];
+            Arrays.fill(this.keys, EMPTY);
+            this.size = 0;
+            for(int i = 0; i < oldKeys.length; i++)
+                if(oldKeys[i] != EMPTY)
+                    put(oldKeys[i], oldNodes[i]);
+        }
+
+        private static int slot(int k, int mask) {
+            int h = k * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    /**
+     * public interface Monoid<A>
+     * <p>
+     * An augmentation of the tree: lift turns an item into an aggregate, and combine must be associative
+     * with identity as its neutral element (combine does not have to be commutative).
+     */
+    public interface Monoid<A> {
+        public A identity(); // The aggregate of no items.
+
+        public A lift(int key, String value); // The aggregate of a single item.
+
+        public A combine(A left, A right); // The aggregate of the items of left followed by the items of right.
+
+        /**
+         * Sum of the values, parsed as longs.
+         */
+        public static final Monoid<Long> SUM = new Monoid<Long>() {
+            public Long identity() { return 0L; }
+            public Long lift(int key, String value) { return Long.parseLong(value); }
+            public Long combine(Long left, Long right) { return left + right; }
+        };
+
+        /**
+         * Minimum of the values, parsed as longs (Long.MAX_VALUE if there are none).
+         */
+        public static final Monoid<Long> MIN = new Monoid<Long>() {
+            public Long identity() { return Long.MAX_VALUE; }
+            public Long lift(int key, String value) { return Long.parseLong(value); }
+            public Long combine(Long left, Long right) { return Math.min(left, right); }
+        };
+
+        /**
+         * Maximum of the values, parsed as longs (Long.MIN_VALUE if there are none).
+         */
+        public static final Monoid<Long> MAX = new Monoid<Long>() {
+            public Long identity() { return Long.MIN_VALUE; }
+            public Long lift(int key, String value) { return Long.parseLong(value); }
+            public Long combine(Long left, Long right) { return Math.max(left, right); }
+        };
+    }
+
+    /**
+     * public interface IAVLNode
+     * ! Do not delete or modify this - otherwise all tests will fail !
+     */
+    public interface IAVLNode {
+        public int getKey(); // Returns node's key (for virtual node return -1).
+
+        public String getValue(); // Returns node's value [info], for virtual node returns null.
+
+        public void setLeft(IAVLNode node); // Sets left child.
+
+        public IAVLNode getLeft(); // Returns left child, if there is no left child returns null.
+
+        public void setRight(IAVLNode node); // Sets right child.
+
+        public IAVLNode getRight(); // Returns right child, if there is no right child return null.
+
+        public void setParent(IAVLNode node); // Sets parent.
+
+        public IAVLNode getParent(); // Returns the parent, if there is no parent return null.
+
+        public boolean isRealNode(); // Returns True if this is a non-virtual AVL node.
+
+        public void setHeight(int height); // Sets the height of the node.
+
+        public int getHeight(); // Returns the height of the node (-1 for virtual nodes).
+
+        public int getSize(); // Returns the size of the node (0 for virtual nodes).
+        
+        public void setSize(int size); // Sets the size of the node.
+
+    }
+
+    /**
+     * public class AVLNode
+     * <p>
+     * If you wish to implement classes other than AVLTree
+     * (for example AVLNode), do it in this file, not in another file.
+     * <p>
+     * This class can and MUST be modified (It must implement IAVLNode).
+     */
+    public static class AVLNode implements IAVLNode {
+        String value;
+        int key, height, size;
+        AVLNode left, parent, right;
+        Object aggregate; // The aggregate of the sub-tree, if the tree is augmented
+
+        public AVLNode() {
+            this.key = -1;
+            this.value = null;
+            this.right = null;
+            this.left = null;
+            this.parent = null;
+            this.height = -1;
+            this.size = 0;
+        }
+
+        public AVLNode(int key, String value) {
+            assert key >= 0;
+            this.key = key;
+            this.value = value;
+            this.setRight(new AVLNode());
+            this.setLeft(new AVLNode());
+            this.parent = null;
+            this.height = 0;
+            this.size = 1;
+        }
+
+        public int getKey() {
+            return this.key;
+        }
+
+        public String getValue() {
+            return this.value;
+        }
+
+        public void setValue(String value) { // Note: doesn't update the aggregates of an augmented tree.
             this.value = value;
         }
 
@@ -0,0 +1,328 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ConcurrentFibonacciHeap
+ *
+ * A relaxed concurrent priority queue over integers (a "MultiQueue") built from several
+ * sequential Fibonacci heaps, each guarded by its own lock.
+ *
+ * insert puts the key into a random unlocked heap. deleteMin looks at two random heaps and deletes the
+ * minimum of the one with the smaller minimum. Threads therefore rarely wait for each other, and insert and
+ * deleteMin throughput grows with the number of threads.
+ *
+ * Ordering guarantees:
+ * - deleteMin is NOT strictly ordered. It returns the minimum of one of the heaps, which is one of the
+ *   smallest keys with high probability (the expected rank of the returned key is O(number of heaps)).
+ * - Keys inserted by one thread are never returned out of order relative to each other by a single heap,
+ *   but two keys inserted into different heaps may be returned in any order.
+ * - deleteMin returns null only if all heaps were seen empty while scanning them one after the other.
+ * - findMin and size are not atomic snapshots when other threads are working on the heap.
+ * - decreaseKey, delete and the operations on a single heap are linearizable.
+ * FibonacciHeap.totalLinks()/totalCuts() are not thread safe and are not accurate under concurrent use.
+ */
+public class ConcurrentFibonacciHeap
+{
+	private final Shard[] shards;
+	private final AtomicInteger size;
+
+	/**
+	 * public ConcurrentFibonacciHeap()
+	 *
+	 * Creates a heap with two sequential heaps per available processor.
+	 */
+	public ConcurrentFibonacciHeap()
+	{
+		this(2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * public ConcurrentFibonacciHeap(int num_of_shards)
+	 *
+	 * Creates a heap that spreads its keys over num_of_shards sequential heaps.
+	 * More heaps means less contention and a weaker ordering of deleteMin.
+	 * pre: num_of_shards > 0
+	 */
+	public ConcurrentFibonacciHeap(int num_of_shards)
+	{
+		if(num_of_shards <= 0)
+			throw new IllegalArgumentException("num_of_shards must be positive");
+		this.shards = new Shard[num_of_shards];
+		for(int i = 0; i < num_of_shards; i++)
+			this.shards[i] = new Shard();
+		this.size = new AtomicInteger();
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * Returns true if the heap was empty at some point during the call.
+	 * Time Complexity: O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return this.size.get() == 0;
+	}
+
+	/**
+	 * public Handle insert(int key)
+	 *
+	 * Inserts the key into a random heap that isn't locked by another thread.
+	 * The added key is assumed not to already belong to the heap.
+	 *
+	 * Returns a handle to the new node, for decreaseKey/delete.
+	 * Time Complexity: O(1) expected
+	 */
+	public Handle insert(int key)
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Shard shard;
+		while(true) // find a free heap
+		{
+			shard = this.shards[random.nextInt(this.shards.length)];
+			if(shard.lock.tryLock())
+				break;
+		}
+		try
+		{
+			Handle handle = new Handle(shard.heap.insert(key), shard);
+			shard.updateTop();
+			this.size.incrementAndGet();
+			return handle;
+		}
+		finally
+		{
+			shard.lock.unlock();
+		}
+	}
+
+	/**
+	 * public int findMin()
+	 *
+	 * Returns the smallest key seen while scanning the heaps, or Integer.MAX_VALUE if all of them were empty.
+	 * Unlike deleteMin this looks at every heap, but without locking them.
+	 * Time Complexity: O(number of heaps)
+	 */
+	public int findMin()
+	{
+		long min = Shard.EMPTY;
+		for(Shard shard : this.shards)
+			min = Math.min(min, shard.top);
+		return min == Shard.EMPTY ? Integer.MAX_VALUE : (int) min;
+	}
+
+	/**
+	 * public HeapNode deleteMin()
+	 *
+	 * Deletes the minimum of the smaller of two random heaps (see the ordering guarantees above).
+	 * If sampling keeps hitting empty heaps, the heaps are scanned one after the other instead.
+	 *
+	 * Returns the deleted node, or null if the heap is empty.
+	 * Time Complexity: O(log n) amortized
+	 */
+	public FibonacciHeap.HeapNode deleteMin()
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for(int attempt = 0; attempt < this.shards.length; attempt++)
+		{
+			if(this.size.get() == 0)
+				return null;
+			Shard a = this.shards[random.nextInt(this.shards.length)];
+			Shard b = this.shards[random.nextInt(this.shards.length)];
+			Shard shard = b.top < a.top ? b : a;
+			if(shard.top == Shard.EMPTY || !shard.lock.tryLock()) // empty or busy, sample again
+				continue;
+			try
+			{
+				FibonacciHeap.HeapNode deleted = shard.deleteMin();
+				if(deleted != null)
+					return deleted;
+			}
+			finally
+			{
+				shard.lock.unlock();
+			}
+		}
+		for(Shard shard : this.shards) // the heap is (almost) empty, don't rely on sampling
+		{
+			shard.lock.lock();
+			try
+			{
+				FibonacciHeap.HeapNode deleted = shard.deleteMin();
+				if(deleted != null)
+					return deleted;
+			}
+			finally
+			{
+				shard.lock.unlock();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * public void decreaseKey(Handle x, int delta)
+	 *
+	 * Decreases the key of x by a non-negative value delta.
+	 * It is assumed that x indeed belongs to the heap.
+	 * Time Complexity: O(1) amortized
+	 */
+	public void decreaseKey(Handle x, int delta)
+	{
+		Shard shard = x.lockShard();
+		try
+		{
+			shard.heap.decreaseKey(x.node, delta);
+			shard.updateTop();
+		}
+		finally
+		{
+			shard.lock.unlock();
+		}
+	}
+
+	/**
+	 * public void delete(Handle x)
+	 *
+	 * Deletes x from the heap.
+	 * It is assumed that x indeed belongs to the heap.
+	 * Time Complexity: O(log n) amortized
+	 */
+	public void delete(Handle x)
+	{
+		Shard shard = x.lockShard();
+		try
+		{
+			shard.heap.delete(x.node);
+			shard.updateTop();
+			this.size.decrementAndGet();
+		}
+		finally
+		{
+			shard.lock.unlock();
+		}
+	}
+
+	/**
+	 * public void meld(ConcurrentFibonacciHeap heap2)
+	 *
+	 * Melds heap2 into the current heap, heap i of heap2 is melded into heap (i mod number of heaps).
+	 * Handles of heap2 stay valid and can be used with the current heap.
+	 * heap2 must not be used by any thread during the meld, and must not be used afterwards.
+	 * Time Complexity: O(number of heaps of heap2)
+	 */
+	public void meld(ConcurrentFibonacciHeap heap2)
+	{
+		for(int i = 0; i < heap2.shards.length; i++)
+		{
+			Shard shard = this.shards[i % this.shards.length];
+			Shard other = heap2.shards[i];
+			shard.lock.lock();
+			try
+			{
+				shard.heap.meld(other.heap);
+				shard.updateTop();
+				other.heap = null;
+				other.top = Shard.EMPTY;
+				other.merged_into = shard; // forward the handles of heap2
+			}
+			finally
+			{
+				shard.lock.unlock();
+			}
+		}
+		this.size.addAndGet(heap2.size.getAndSet(0));
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of elements in the heap.
+	 * Time Complexity: O(1)
+	 */
+	public int size()
+	{
+		return this.size.get();
+	}
+
+	/**
+	 * private class Shard
+	 *
+	 * One sequential heap and the lock that guards it.
+	 */
+	private final class Shard
+	{
+		static final long EMPTY = Long.MAX_VALUE;
+		final ReentrantLock lock = new ReentrantLock();
+		FibonacciHeap heap = new FibonacciHeap();
+		volatile long top = EMPTY; // min key of heap, read without locking by deleteMin sampling
+		volatile Shard merged_into; // not null if this heap was melded into another one
+
+		/**
+		 * pre: the current thread holds lock
+		 * deletes the min of heap and updates the counters, returns null if heap is empty.
+		 */
+		FibonacciHeap.HeapNode deleteMin()
+		{
+			FibonacciHeap.HeapNode deleted = this.heap.findMin();
+			if(deleted == null)
+				return null;
+			this.heap.deleteMin();
+			updateTop();
+			ConcurrentFibonacciHeap.this.size.decrementAndGet();
+			return deleted;
+		}
+
+		/**
+		 * pre: the current thread holds lock
+		 */
+		void updateTop()
+		{
+			FibonacciHeap.HeapNode min = this.heap.findMin();
+			this.top = min == null ? EMPTY : min.getKey();
+		}
+	}
+
+	/**
+	 * public static class Handle
+	 *
+	 * A node of the heap together with the sequential heap that contains it.
+	 */
+	public static class Handle
+	{
+		private final FibonacciHeap.HeapNode node;
+		private ConcurrentFibonacciHeap.Shard shard;
+
+		private Handle(FibonacciHeap.HeapNode node, ConcurrentFibonacciHeap.Shard shard)
+		{
+			this.node = node;
+			this.shard = shard;
+		}
+
+		public int getKey()
+		{
+			return this.node.getKey();
+		}
+
+		/**
+		 * locks the heap that currently contains the node, following melds, and returns it.
+		 */
+		private ConcurrentFibonacciHeap.Shard lockShard()
+		{
+			while(true)
+			{
+				ConcurrentFibonacciHeap.Shard curr = this.shard;
+				while(curr.merged_into != null)
+					curr = curr.merged_into;
+				curr.lock.lock();
+				if(curr.merged_into == null)
+				{
+					this.shard = curr; // shorten the path for the next time
+					return curr;
+				}
+				curr.lock.unlock(); // melded meanwhile, try again
+			}
+		}
+	}
+}
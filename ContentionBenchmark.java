@@ -0,0 +1,211 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * ContentionBenchmark
+ *
+ * Compares the shared priority queues under contention: FlatCombiningFibonacciHeap, a FibonacciHeap behind
+ * a synchronized wrapper, and java.util.concurrent.PriorityBlockingQueue.
+ * Every run starts from PREFILL keys, and THREADS_OPS operations (half inserts of random keys, half deleteMins)
+ * are split between the threads. The churn run does the same with short-lived threads, CHURN_BATCH at a time,
+ * CHURN_OPS operations each, so the slots of the flat-combining heap have to be taken over from dead threads.
+ *
+ * java ContentionBenchmark [max threads]
+ * prints the median throughput of ROUNDS runs after WARMUP runs for 1, 2, 4, ... max threads
+ * (default 2 * availableProcessors).
+ */
+public class ContentionBenchmark
+{
+	private static final int WARMUP = 2;
+	private static final int ROUNDS = 5;
+	private static final int PREFILL = 100_000;
+	private static final int THREADS_OPS = 2_000_000;
+	private static final int CHURN_BATCH = 4;
+	private static final int CHURN_OPS = 1000;
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int max_threads = args.length > 0 ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+		Map<String, Supplier<SharedQueue>> queues = new LinkedHashMap<>();
+		queues.put("flat combining", ContentionBenchmark::flatCombining);
+		queues.put("synchronized", ContentionBenchmark::locked);
+		queues.put("PriorityBlockingQueue", ContentionBenchmark::blocking);
+		System.out.println("availableProcessors = " + Runtime.getRuntime().availableProcessors());
+		System.out.printf("%-22s %-10s %14s%n", "queue", "threads", "median Mops/s");
+		for(int threads = 1; threads <= max_threads; threads *= 2)
+			for(Map.Entry<String, Supplier<SharedQueue>> e : queues.entrySet())
+			{
+				int t = threads;
+				report(e.getKey(), Integer.toString(threads), () -> run(e.getValue().get(), t));
+			}
+		for(Map.Entry<String, Supplier<SharedQueue>> e : queues.entrySet())
+			report(e.getKey(), "churn", () -> churn(e.getValue().get()));
+	}
+
+	/**
+	 * private static long run(SharedQueue queue, int threads)
+	 *
+	 * Runs THREADS_OPS operations split between the threads, and returns the time in nanoseconds.
+	 */
+	private static long run(SharedQueue queue, int threads) throws InterruptedException
+	{
+		prefill(queue);
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for(int i = 0; i < threads; i++)
+		{
+			long seed = i;
+			workers[i] = new Thread(() -> {
+				try
+				{
+					start.await();
+				}
+				catch(InterruptedException e)
+				{
+					return;
+				}
+				work(queue, THREADS_OPS / threads, new SplittableRandom(seed));
+			});
+			workers[i].start();
+		}
+		long t0 = System.nanoTime();
+		start.countDown();
+		for(Thread w : workers)
+			w.join();
+		return System.nanoTime() - t0;
+	}
+
+	/**
+	 * private static long churn(SharedQueue queue)
+	 *
+	 * Runs THREADS_OPS operations on threads that live for CHURN_OPS operations each, and returns the time
+	 * in nanoseconds.
+	 */
+	private static long churn(SharedQueue queue) throws InterruptedException
+	{
+		prefill(queue);
+		long t0 = System.nanoTime();
+		for(int done = 0; done < THREADS_OPS; done += CHURN_BATCH * CHURN_OPS)
+		{
+			Thread[] workers = new Thread[CHURN_BATCH];
+			for(int i = 0; i < CHURN_BATCH; i++)
+			{
+				long seed = done + i;
+				workers[i] = new Thread(() -> work(queue, CHURN_OPS, new SplittableRandom(seed)));
+				workers[i].start();
+			}
+			for(Thread w : workers)
+				w.join();
+		}
+		return System.nanoTime() - t0;
+	}
+
+	private static void prefill(SharedQueue queue)
+	{
+		SplittableRandom rnd = new SplittableRandom(-1);
+		for(int i = 0; i < PREFILL; i++)
+			queue.insert(rnd.nextInt(Integer.MAX_VALUE));
+	}
+
+	private static void work(SharedQueue queue, int ops, SplittableRandom rnd)
+	{
+		for(int i = 0; i < ops; i++)
+		{
+			if(rnd.nextBoolean())
+				queue.insert(rnd.nextInt(Integer.MAX_VALUE));
+			else
+				queue.deleteMin();
+		}
+	}
+
+	/**
+	 * private static void report(String queue, String threads, Run run)
+	 *
+	 * Runs WARMUP + ROUNDS times and prints the median throughput of the last ROUNDS runs.
+	 */
+	private static void report(String queue, String threads, Run run) throws InterruptedException
+	{
+		long[] nanos = new long[ROUNDS];
+		for(int i = -WARMUP; i < ROUNDS; i++)
+		{
+			long t = run.nanos();
+			if(i >= 0)
+				nanos[i] = t;
+		}
+		Arrays.sort(nanos);
+		System.out.printf("%-22s %-10s %14.2f%n", queue, threads, THREADS_OPS * 1e3 / nanos[ROUNDS / 2]);
+	}
+
+	private static SharedQueue flatCombining()
+	{
+		FlatCombiningFibonacciHeap heap = new FlatCombiningFibonacciHeap();
+		return new SharedQueue()
+		{
+			public void insert(int key)
+			{
+				heap.insert(key);
+			}
+
+			public void deleteMin()
+			{
+				heap.deleteMin();
+			}
+		};
+	}
+
+	private static SharedQueue locked()
+	{
+		FibonacciHeap heap = new FibonacciHeap();
+		return new SharedQueue()
+		{
+			public synchronized void insert(int key)
+			{
+				heap.insert(key);
+			}
+
+			public synchronized void deleteMin()
+			{
+				heap.deleteMin();
+			}
+		};
+	}
+
+	private static SharedQueue blocking()
+	{
+		PriorityBlockingQueue<Integer> queue = new PriorityBlockingQueue<>();
+		return new SharedQueue()
+		{
+			public void insert(int key)
+			{
+				queue.offer(key);
+			}
+
+			public void deleteMin()
+			{
+				queue.poll();
+			}
+		};
+	}
+
+	/**
+	 * private interface SharedQueue
+	 *
+	 * The two operations of the benchmark, on a queue shared by all the threads.
+	 */
+	private interface SharedQueue
+	{
+		void insert(int key);
+
+		void deleteMin();
+	}
+
+	private interface Run
+	{
+		long nanos() throws InterruptedException;
+	}
+}
@@ -0,0 +1,229 @@
+import java.util.Arrays;
+
+/**
+ * DaryHeap
+ *
+ * An implementation of an array based d-ary min heap over integers.
+ * Every node remembers its position in the array, so decreaseKey and delete don't need to search for it.
+ */
+public class DaryHeap implements IntPriorityQueue<DaryHeap.HeapNode, DaryHeap>
+{
+	private final int d;
+	private HeapNode[] nodes;
+	private int size;
+
+	/**
+	 * public DaryHeap()
+	 *
+	 * Creates an empty 4-ary heap.
+	 */
+	public DaryHeap()
+	{
+		this(4);
+	}
+
+	/**
+	 * public DaryHeap(int d)
+	 *
+	 * Creates an empty d-ary heap.
+	 * pre: d >= 2
+	 */
+	public DaryHeap(int d)
+	{
+		if(d < 2)
+			throw new IllegalArgumentException("d must be at least 2");
+		this.d = d;
+		this.nodes = new HeapNode[16];
+		this.size = 0;
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * Returns true if and only if the heap is empty.
+	 * Time Complexity: O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	/**
+	 * public HeapNode insert(int key)
+	 *
+	 * Adds a node with the given key at the end of the array and sifts it up.
+	 * Returns the newly created node.
+	 * Time Complexity: O(log_d n)
+	 */
+	public HeapNode insert(int key)
+	{
+		if(this.size == this.nodes.length)
+			this.nodes = Arrays.copyOf(this.nodes, 2 * this.size);
+		HeapNode newNode = new HeapNode(key);
+		this.nodes[this.size] = newNode;
+		newNode.position = this.size;
+		this.size++;
+		siftUp(newNode.position);
+		return newNode;
+	}
+
+	/**
+	 * public HeapNode findMin()
+	 *
+	 * Returns the node of the heap whose key is minimal, or null if the heap is empty.
+	 * Time Complexity: O(1)
+	 */
+	public HeapNode findMin()
+	{
+		return this.size == 0 ? null : this.nodes[0];
+	}
+
+	/**
+	 * public void deleteMin()
+	 *
+	 * Deletes the node containing the minimum key.
+	 * Time Complexity: O(d log_d n)
+	 */
+	public void deleteMin()
+	{
+		if(isEmpty())
+			return;
+		removeAt(0);
+	}
+
+	/**
+	 * public void decreaseKey(HeapNode x, int delta)
+	 *
+	 * Decreases the key of the node x by a non-negative value delta and sifts it up.
+	 * Time Complexity: O(log_d n)
+	 */
+	public void decreaseKey(HeapNode x, int delta)
+	{
+		x.key -= delta;
+		siftUp(x.position);
+	}
+
+	/**
+	 * public void delete(HeapNode x)
+	 *
+	 * Deletes the node x from the heap.
+	 * Time Complexity: O(d log_d n)
+	 */
+	public void delete(HeapNode x)
+	{
+		removeAt(x.position);
+	}
+
+	/**
+	 * public void meld(DaryHeap heap2)
+	 *
+	 * Appends the nodes of heap2 and restores the heap order bottom up.
+	 * Time Complexity: O(n + heap2.size())
+	 */
+	public void meld(DaryHeap heap2)
+	{
+		if(heap2.isEmpty())
+			return;
+		if(this.size + heap2.size > this.nodes.length)
+			this.nodes = Arrays.copyOf(this.nodes, Math.max(2 * this.nodes.length, this.size + heap2.size));
+		for(int i = 0; i < heap2.size; i++)
+		{
+			HeapNode x = heap2.nodes[i];
+			x.position = this.size;
+			this.nodes[this.size++] = x;
+		}
+		for(int i = (this.size - 2) / this.d; i >= 0; i--) // heapify
+			siftDown(i);
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of elements in the heap.
+	 * Time Complexity: O(1)
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * private void removeAt(int i)
+	 *
+	 * Replaces the node in position i with the last node and restores the heap order.
+	 */
+	private void removeAt(int i)
+	{
+		HeapNode removed = this.nodes[i];
+		this.size--;
+		HeapNode last = this.nodes[this.size];
+		this.nodes[this.size] = null;
+		removed.position = -1;
+		if(i == this.size) // removed the last node
+			return;
+		this.nodes[i] = last;
+		last.position = i;
+		if(i > 0 && last.key < this.nodes[(i - 1) / this.d].key)
+			siftUp(i);
+		else
+			siftDown(i);
+	}
+
+	private void siftUp(int i)
+	{
+		HeapNode x = this.nodes[i];
+		while(i > 0)
+		{
+			int parent = (i - 1) / this.d;
+			if(this.nodes[parent].key <= x.key)
+				break;
+			this.nodes[i] = this.nodes[parent];
+			this.nodes[i].position = i;
+			i = parent;
+		}
+		this.nodes[i] = x;
+		x.position = i;
+	}
+
+	private void siftDown(int i)
+	{
+		HeapNode x = this.nodes[i];
+		while(true)
+		{
+			int first_child = this.d * i + 1;
+			if(first_child >= this.size)
+				break;
+			int smallest = first_child;
+			int last_child = Math.min(first_child + this.d, this.size);
+			for(int c = first_child + 1; c < last_child; c++)
+				if(this.nodes[c].key < this.nodes[smallest].key)
+					smallest = c;
+			if(this.nodes[smallest].key >= x.key)
+				break;
+			this.nodes[i] = this.nodes[smallest];
+			this.nodes[i].position = i;
+			i = smallest;
+		}
+		this.nodes[i] = x;
+		x.position = i;
+	}
+
+	/**
+	 * public static class HeapNode
+	 */
+	public static class HeapNode implements IntPriorityQueue.Handle
+	{
+		private int key;
+		private int position; // index in nodes, -1 after the node was deleted
+
+		private HeapNode(int key)
+		{
+			this.key = key;
+		}
+
+		public int getKey()
+		{
+			return this.key;
+		}
+	}
+}
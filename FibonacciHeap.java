@@ -1,18 +1,31 @@
-
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
 /**
  * FibonacciHeap
  *
  * An implementation of a Fibonacci Heap over integers.
  */
-public class FibonacciHeap
+public class FibonacciHeap implements IntPriorityQueue<FibonacciHeap.HeapNode, FibonacciHeap>
 {
 	private HeapNode min;
 	private HeapNode first;
 	private int size;
 	static final double GOLDEN_RATIO = (1 + Math.sqrt(5))/2;
+	private static final int PARALLEL_BUILD_SIZE = 1 << 15; // smaller arrays are built sequentially
 	private int marked_count;
 	private int num_of_trees;
+	private int max_rank; // upper bound on the rank of a root, exact after consolidation
+	private int last_consolidation_roots; // roots scanned by the last consolidation
+	private int last_consolidation_links; // links made by the last consolidation
+	private HeapMetrics metrics; // null when monitoring is disabled
+	OpTrace trace; // null when recording is disabled
+	int trace_id; // the id of the heap in the trace
 	static int total_cuts;
 	static int total_links;
 	
@@ -24,6 +37,19 @@ public class FibonacciHeap
 		this.marked_count = 0;
 	}
 
+   /**
+    * public FibonacciHeap(int[] keys)
+    *
+    * Builds a heap that contains the given keys in a single pass (see insertAll).
+    * Use insertAll on an empty heap instead if the nodes are needed for decreaseKey/delete.
+    * Time Complexity: O(keys.length)
+    */
+	public FibonacciHeap(int[] keys)
+	{
+		this();
+		insertAll(keys);
+	}
+
    /**
     * public boolean isEmpty()
     *
@@ -63,10 +89,49 @@ public class FibonacciHeap
     	}
     	
     	this.size++;
+    	if(this.trace != null)
+    		this.trace.heapInsert(this, newNode);
     	return this.first;
     }
-    	
-    
+
+   /**
+    * public HeapNode[] insertAll(int[] keys)
+    *
+    * Inserts all the given keys into the heap as a batch.
+    * The new nodes are allocated and chained together in one pass (tracking the batch minimum on the way),
+    * and the chain is spliced into the root list once, instead of once per key.
+    * The added keys are assumed not to already belong to the heap.
+    *
+    * Returns the newly created nodes, the i-th node holds keys[i].
+    * Time Complexity: O(keys.length)
+    */
+    public HeapNode[] insertAll(int[] keys)
+    {
+    	HeapNode[] nodes = new HeapNode[keys.length];
+    	if(keys.length == 0) // nothing to insert
+    		return nodes;
+    	HeapNode batch_min = nodes[0] = new HeapNode(keys[0]);
+    	for(int i=1; i<keys.length; i++) // create the nodes and chain them
+    	{
+    		HeapNode curr = new HeapNode(keys[i]);
+    		nodes[i] = curr;
+    		nodes[i-1].next = curr;
+    		curr.prev = nodes[i-1];
+    		if(curr.key < batch_min.key)
+    			batch_min = curr;
+    	}
+    	addListAsFirst(nodes[0], nodes[keys.length-1]);
+    	if(this.min == null || batch_min.key < this.min.key)
+    		this.min = batch_min;
+    	this.size += keys.length;
+    	this.num_of_trees += keys.length;
+    	if(this.trace != null) // recorded as separate inserts
+    		for(HeapNode node : nodes)
+    			this.trace.heapInsert(this, node);
+    	return nodes;
+    }
+
+
 
    /**
     * public void deleteMin()
@@ -78,12 +143,189 @@ public class FibonacciHeap
     {
     	if(isEmpty()) //if ther's nothing to delete
     		return;
+    	if(this.trace != null)
+    		this.trace.heapDeleteMin(this);
+    	long start = this.metrics == null ? 0 : System.nanoTime();
+    	this.last_consolidation_roots = 0;
+    	this.last_consolidation_links = 0;
+    	removeMin();
+    	if(!isEmpty())
+    		this.consolidation();
+    	if(this.metrics != null)
+    		this.metrics.recordDeleteMin(this, System.nanoTime() - start);
+    }
+
+   /**
+    * public int pollMin(int k, int[] out)
+    *
+    * Deletes the k nodes with the smallest keys (or all nodes, if the heap has less than k),
+    * and writes their keys in ascending order to out[0..].
+    * The heap is consolidated lazily during the batch: a deletion only scans the root list for the next minimum,
+    * until the number of trees exceeds about 2*log(n), and the heap is consolidated once at the end of the batch.
+    * pre: out.length >= k
+    *
+    * Returns the number of deleted keys.
+    * Time Complexity: O(n + k*log(n)) for the first batch after inserts, O((k+1)*log(n)) amortized
+    */
+    public int pollMin(int k, int[] out)
+    {
+    	return pollMin(k, out, null);
+    }
+
+   /**
+    * public int pollMin(int k, HeapNode[] out)
+    *
+    * Same as pollMin(int k, int[] out), but writes the deleted nodes instead of their keys.
+    * pre: out.length >= k
+    *
+    * Returns the number of deleted nodes.
+    * Time Complexity: O(n + k*log(n)) for the first batch after inserts, O((k+1)*log(n)) amortized
+    */
+    public int pollMin(int k, HeapNode[] out)
+    {
+    	return pollMin(k, null, out);
+    }
+
+   /**
+    * public int[] drainWhile(IntPredicate condition)
+    *
+    * Deletes nodes in ascending key order for as long as the minimum key satisfies the condition.
+    * Consolidates lazily, the same way as pollMin.
+    *
+    * Returns the deleted keys in ascending order.
+    * Time Complexity: O(n + k*log(n)) for the first batch after inserts, O((k+1)*log(n)) amortized,
+    * k is the number of deleted keys
+    */
+    public int[] drainWhile(IntPredicate condition)
+    {
+    	int[] res = new int[8];
+    	int count = 0;
+    	while(!isEmpty() && condition.test(this.min.getKey()))
+    	{
+    		if(count == res.length) // res is full
+    			res = Arrays.copyOf(res, 2*res.length);
+    		res[count] = this.min.getKey();
+    		deleteMinInBatch();
+    		count ++;
+    	}
+    	endBatch();
+    	return Arrays.copyOf(res, count);
+    }
+
+    /**
+     * private int pollMin(int k, int[] keys, HeapNode[] nodes)
+     *
+     * The loop of both pollMin methods, the deleted keys are written to keys and the nodes to nodes (if not null).
+     */
+    private int pollMin(int k, int[] keys, HeapNode[] nodes)
+    {
+    	int count = 0;
+    	while(count < k && !isEmpty())
+    	{
+    		if(keys != null)
+    			keys[count] = this.min.getKey();
+    		if(nodes != null)
+    			nodes[count] = this.min;
+    		deleteMinInBatch();
+    		count ++;
+    	}
+    	endBatch();
+    	return count;
+    }
+
+    /**
+     * private void deleteMinInBatch()
+     *
+     *pre: !isEmpty()
+     * deletes the min node. The heap is consolidated only if it has more than about 2*log(n) trees,
+     * otherwise the new min is found by scanning the roots, so a deletion costs O(log(n)) amortized
+     * (except for the first consolidation after inserts).
+	 * Time Complexity: O(log(n)) amortized
+     */
+    private void deleteMinInBatch()
+    {
+    	if(this.trace != null) // recorded as a deleteMin
+    		this.trace.heapDeleteMin(this);
+    	long start = this.metrics == null ? 0 : System.nanoTime();
+    	this.last_consolidation_roots = 0;
+    	this.last_consolidation_links = 0;
+    	removeMin();
+    	if(!isEmpty())
+    	{
+    		if(this.num_of_trees > maxLazyTrees())
+    			this.consolidation();
+    		else
+    			updateMin();
+    	}
+    	if(this.metrics != null)
+    		this.metrics.recordDeleteMin(this, System.nanoTime() - start);
+    }
+
+    /**
+     * private void endBatch()
+     *
+     * Consolidates the heap after a batch of deleteMinInBatch, so it's left in the same shape as after deleteMin.
+     * The gauges (and the metrics, if set) then describe this consolidation.
+	 * Time Complexity: O(log(n))
+     */
+    private void endBatch()
+    {
+    	if(isEmpty() || this.num_of_trees <= 1)
+    		return;
+    	this.consolidation();
+    	if(this.metrics != null)
+    		this.metrics.recordShape(this);
+    }
+
+    /**
+     * private int maxLazyTrees()
+     *
+     * Returns the number of trees above which deleteMinInBatch consolidates, 2*log2(n) + 2,
+     * which is more than the log_phi(n) trees that are left by a consolidation.
+     */
+    private int maxLazyTrees()
+    {
+    	return 2 * (32 - Integer.numberOfLeadingZeros(this.size)) + 2;
+    }
+
+    /**
+     * private void updateMin()
+     *
+     *pre: !isEmpty()
+     * sets this.min to the root with the smallest key.
+	 * Time Complexity: O(#trees)
+     */
+    private void updateMin()
+    {
+    	HeapNode minNode = this.first;
+    	HeapNode pointer = this.first.getNext();
+    	while(pointer != this.first)
+    	{
+    		if(pointer.getKey() < minNode.getKey())
+    			minNode = pointer;
+    		pointer = pointer.getNext();
+    	}
+    	this.min = minNode;
+    }
+
+    /**
+     * private void removeMin()
+     *
+     *pre: !isEmpty()
+     * disconnect the min node and add its children as roots, without consolidating.
+     * updates size,first,marked_count,num_of_trees fields.
+     * (this.min still points to the removed node unless the heap became empty)
+	 * Time Complexity: O(deg(min))
+     */
+    private void removeMin()
+    {
     	this.num_of_trees --;
     	if(this.size == 1) // if min is the last node
     	{
     		this.min = null;
     		this.first = null;
     		this.size= 0;
+    		this.max_rank = 0;
     		return;
     	}
     	HeapNode first_child = null;
@@ -100,6 +342,8 @@ public class FibonacciHeap
     		HeapNode pointer = first_child;
     		do {
     			this.num_of_trees ++;
+    			if(pointer.getRank() > this.max_rank)
+    				this.max_rank = pointer.getRank();
     			if(pointer.getMark() == true)
     			{
     				pointer.setMark(false);
@@ -135,7 +379,6 @@ public class FibonacciHeap
     	}
     	
     	this.size --;
-    	this.consolidation();
     }
     /**
      *public void consolidation()
@@ -147,6 +390,7 @@ public class FibonacciHeap
     	
     	int arr_size = (int)(Math.ceil(Math.log(size))/Math.log(GOLDEN_RATIO))+1;
     	HeapNode[] ranks= new HeapNode [arr_size]; 
+    	int roots_before = this.num_of_trees;
     	this.first.getPrev().next = null; // disconect the last tree from the first, in order of not getting to inf loop
     	HeapNode curr = this.first;
     	HeapNode next = curr.next;
@@ -180,6 +424,7 @@ public class FibonacciHeap
     	{
     		if(ranks[i] == null)
     			continue;
+    		this.max_rank = i;
     		if(!found_smallest_node)
     		{
     			smallest_node = ranks[i];
@@ -200,6 +445,8 @@ public class FibonacciHeap
   
     	this.first = smallest_node;
     	this.min = minNode;
+    	this.last_consolidation_roots = roots_before;
+    	this.last_consolidation_links = roots_before - this.num_of_trees;
     	
     	
     }
@@ -266,6 +513,8 @@ public class FibonacciHeap
     {
     	if(heap2.isEmpty())
     		return;
+    	if(this.trace != null)
+    		this.trace.heapMeld(this, heap2);
     	if(this.isEmpty())// (&& !heap2.isEmpty)
     	{
     		this.first = heap2.first;
@@ -273,6 +522,7 @@ public class FibonacciHeap
     		this.size = heap2.size;
     		this.marked_count = heap2.marked_count;
     		this.num_of_trees = heap2.num_of_trees;
+    		this.max_rank = heap2.max_rank;
     		return;
     	}
     	
@@ -282,6 +532,7 @@ public class FibonacciHeap
     		  this.min = heap2.min;
     	this.size = this.size + heap2.size; 
     	this.marked_count = this.marked_count + heap2.marked_count; 
+    	this.max_rank = Math.max(this.max_rank, heap2.max_rank);
     	
     	//connect between the heaps
     	HeapNode first_heap2 = heap2.first;
@@ -293,6 +544,22 @@ public class FibonacciHeap
     	first_heap2.setPrev(last_this);
     }
 
+    /**
+     * private void clear()
+     *
+     * Makes the heap empty without touching its nodes (used after the nodes were melded into another heap).
+	 * Time Complexity: O(1)
+     */
+    private void clear()
+    {
+    	this.first = null;
+    	this.min = null;
+    	this.size = 0;
+    	this.marked_count = 0;
+    	this.num_of_trees = 0;
+    	this.max_rank = 0;
+    }
+
    /**
     * public int size()
     *
@@ -344,8 +611,15 @@ public class FibonacciHeap
     */
     public void delete(HeapNode x) 
     { 
+    	OpTrace trace = this.trace;
+    	if(trace != null) // recorded as one delete, not as the decreaseKey and deleteMin below
+    	{
+    		trace.heapDelete(this, x);
+    		this.trace = null;
+    	}
     	decreaseKey(x, x.getKey() - (this.min.getKey()-1));
     	deleteMin(); // size,first,min,num_of_trees updates inside this function
+    	this.trace = trace;
     }
 
    /**
@@ -357,6 +631,8 @@ public class FibonacciHeap
     */
     public void decreaseKey(HeapNode x, int delta)
     {    
+    	if(this.trace != null)
+    		this.trace.heapDecreaseKey(this, x, delta);
     	x.setKey(x.getKey()-delta);
     	if(x.getKey() < this.min.getKey()) // update min if needed
     		this.min = x;
@@ -405,6 +681,8 @@ public class FibonacciHeap
     	}
     	addAsFirst(x); // add first as this.first
     	this.num_of_trees ++;
+    	if(x.getRank() > this.max_rank)
+    		this.max_rank = x.getRank();
     }
     
     /**
@@ -413,23 +691,25 @@ public class FibonacciHeap
      *
      * pre: y!= null
      * perform a cascading cut progress starting at x
+     * (iterative, so long chains of marked ancestors don't grow the stack)
 	 * Time Complexity: O(n)
      */
     
     public void cascadingCut(HeapNode x,HeapNode y) //y is x's parent
     {
-    	cut(x,y);
-    	if(y.parent != null) // y isn't root
+    	while(true)
     	{
+    		cut(x,y);
+    		if(y.parent == null) // y is root
+    			return;
     		if(y.mark == false)
     		{
     			y.setMark(true);
         		this.marked_count ++;
+        		return;
     		}
-    		else
-    		{
-    			cascadingCut(y,y.parent); //continue cascading cut progress
-    		}
+    		x = y; //continue cascading cut progress
+    		y = y.parent;
     	}
     }
     
@@ -454,7 +734,36 @@ public class FibonacciHeap
     	old_first.setPrev(this.first);
     	this.first.setPrev(first_prev);
     	first_prev.setNext(this.first);
-    	
+
+    }
+
+    /**
+     * public void addListAsFirst(HeapNode head, HeapNode tail)
+     *
+     *
+     *pre: head, tail != null, head..tail is a chain of roots linked by next/prev
+     *
+     *
+     * add the whole chain head..tail to the beginning with a single splice.
+     * (doesn't update fileds exept of this.first)
+	 * Time Complexity: O(1)
+     */
+
+    public void addListAsFirst(HeapNode head, HeapNode tail)
+    {
+    	if(isEmpty()) // the chain becomes the root list
+    	{
+    		this.first = head;
+    		head.setPrev(tail);
+    		tail.setNext(head);
+    		return;
+    	}
+    	HeapNode last = this.first.getPrev();
+    	tail.setNext(this.first);
+    	this.first.setPrev(tail);
+    	head.setPrev(last);
+    	last.setNext(head);
+    	this.first = head;
     }
 
    /**
@@ -472,6 +781,89 @@ public class FibonacciHeap
     	return this.num_of_trees + 2*this.marked_count; 
     }
 
+   /**
+    * public int numOfTrees()
+    *
+    * Returns the number of trees in the root list.
+	* Time Complexity: O(1)
+    */
+    public int numOfTrees()
+    {
+    	return this.num_of_trees;
+    }
+
+   /**
+    * public int markedCount()
+    *
+    * Returns the number of marked nodes.
+	* Time Complexity: O(1)
+    */
+    public int markedCount()
+    {
+    	return this.marked_count;
+    }
+
+   /**
+    * public int maxRank()
+    *
+    * Returns an upper bound on the rank of the trees (0 for an empty heap).
+    * The bound is exact right after a consolidation, and only grows between consolidations.
+	* Time Complexity: O(1)
+    */
+    public int maxRank()
+    {
+    	return this.max_rank;
+    }
+
+   /**
+    * public int lastConsolidationRoots()
+    *
+    * Returns the number of roots scanned by the consolidation of the last deleteMin (0 if it didn't consolidate).
+	* Time Complexity: O(1)
+    */
+    public int lastConsolidationRoots()
+    {
+    	return this.last_consolidation_roots;
+    }
+
+   /**
+    * public int lastConsolidationLinks()
+    *
+    * Returns the number of links made by the consolidation of the last deleteMin.
+	* Time Complexity: O(1)
+    */
+    public int lastConsolidationLinks()
+    {
+    	return this.last_consolidation_links;
+    }
+
+   /**
+    * public void setMetrics(HeapMetrics metrics)
+    *
+    * Starts recording every deleteMin in metrics, or stops recording if metrics is null.
+    * When no metrics are set, deleteMin only pays for a null check.
+	* Time Complexity: O(1)
+    */
+    public void setMetrics(HeapMetrics metrics)
+    {
+    	this.metrics = metrics;
+    }
+
+   /**
+    * public void setTrace(OpTrace trace)
+    *
+    * Starts recording insert, deleteMin, decreaseKey, delete and meld in trace (the current nodes are recorded
+    * as inserts), or stops recording if trace is null.
+	* Time Complexity: O(n) if the heap isn't recorded yet, O(1) otherwise
+    */
+    public void setTrace(OpTrace trace)
+    {
+    	if(trace == null)
+    		this.trace = null;
+    	else if(trace != this.trace)
+    		trace.addHeap(this);
+    }
+
    /**
     * public static int totalLinks() 
     *
@@ -502,36 +894,250 @@ public class FibonacciHeap
      /**
     * public static int[] kMin(FibonacciHeap H, int k) 
     *
-    * This static function returns the k smallest elements in a Fibonacci heap that contains a single tree.
-    * The function should run in O(k*deg(H)). (deg(H) is the degree of the only tree in H.)
-    *   Time Complexity: O(K*deg(H))
+    * This static function returns the k smallest elements in a Fibonacci heap, in ascending order.
+    * H may contain any number of trees. The keys are read through a MinIterator, so nothing is allocated
+    * per node and no consolidation is done.
+    *   Time Complexity: O(#trees + k*deg(H)*log(#trees + k*deg(H)))
     * ###CRITICAL### : you are NOT allowed to change H.
     */
     public static int[] kMin(FibonacciHeap H, int k)
     {   
     	if(k <= 0 || H.isEmpty() || k > H.size)
     		return new int[0];
-    	FibonacciHeap kMin_heap = new FibonacciHeap(); //heap with potential minimum nodes 
-    	HeapNode curr_min = H.min; 
-    	HeapNode inserted = kMin_heap.insert(curr_min.key); //insert the first min
-    	inserted.setNodeReference(curr_min);
-    	HeapNode curr_min_child = curr_min.getChild();
+    	MinIterator it = new MinIterator(H);
     	int[] res = new int[k]; 
-    	int index = 0;
-    	while(index < k) { // add all k keys
-    		curr_min = kMin_heap.min.node_reference;
-    		curr_min_child = curr_min.getChild();
-    		res[index] = curr_min.key;
-    		for(int i=0 ; i< curr_min.rank ; i++) // add all the children of the last deleted node
+    	for(int index = 0; index < k; index++) // add all k keys
+    		res[index] = it.nextInt();
+        return res; 
+    }
+
+   /**
+    * public static FibonacciHeap parallelBuild(int[] keys)
+    *
+    * Builds a heap that contains the given keys using the common ForkJoinPool: the keys are cut into chunks
+    * that are inserted into the local heaps of a Builder by the pool threads (see Builder).
+    * Small arrays are built in one pass by FibonacciHeap(int[] keys) instead.
+    * Time Complexity: O(keys.length / #threads + #threads * log(n)) with enough threads
+    */
+    public static FibonacciHeap parallelBuild(int[] keys)
+    {
+    	if(keys.length < PARALLEL_BUILD_SIZE)
+    		return new FibonacciHeap(keys);
+    	Builder builder = new Builder();
+    	int chunks = 4 * ForkJoinPool.getCommonPoolParallelism();
+    	IntStream.range(0, chunks).parallel().forEach(chunk -> {
+    		FibonacciHeap local = builder.localHeap();
+    		int from = (int) ((long) chunk * keys.length / chunks);
+    		int to = (int) ((long) (chunk + 1) * keys.length / chunks);
+    		for(int i = from; i < to; i++)
+    			local.insert(keys[i]);
+    	});
+    	return builder.build();
+    }
+
+   /**
+    * public static class Builder
+    *
+    * Builds one heap from several producer threads. insert writes no shared state: every thread inserts
+    * into its own local heap. build consolidates the local heaps in parallel and then melds them,
+    * so the first deleteMin of the built heap links only the O(#threads * log(n)) roots of the local heaps,
+    * instead of consolidating n single-node roots on one thread.
+    * The nodes returned by insert are the nodes of the built heap (for decreaseKey/delete).
+    */
+    public static class Builder
+    {
+    	private final ThreadLocal<FibonacciHeap> local;
+    	private final ConcurrentLinkedQueue<FibonacciHeap> heaps; // the local heaps of all the producers
+    	private volatile boolean built;
+
+    	public Builder()
+    	{
+    		this.local = new ThreadLocal<>();
+    		this.heaps = new ConcurrentLinkedQueue<>();
+    	}
+
+    	/**
+    	 * public HeapNode insert(int key)
+    	 *
+    	 * Inserts the key into the local heap of the calling thread, and returns its node.
+    	 * Time Complexity: O(1)
+    	 */
+    	public HeapNode insert(int key)
+    	{
+    		return localHeap().insert(key);
+    	}
+
+    	/**
+    	 * public HeapNode[] insertAll(int[] keys)
+    	 *
+    	 * Inserts the keys into the local heap of the calling thread as a batch (see FibonacciHeap.insertAll).
+    	 * Time Complexity: O(keys.length)
+    	 */
+    	public HeapNode[] insertAll(int[] keys)
+    	{
+    		return localHeap().insertAll(keys);
+    	}
+
+    	/**
+    	 * public FibonacciHeap build()
+    	 *
+    	 * Consolidates the local heaps in parallel (on the common ForkJoinPool) and melds them into one heap.
+    	 * The builder can't be used afterwards.
+    	 * pre: all the producers finished inserting, and their inserts happen-before build
+    	 * (e.g. the producer threads were joined, or their futures were completed).
+    	 * Time Complexity: O(n / #threads + #heaps) with enough threads
+    	 */
+    	public FibonacciHeap build()
+    	{
+    		if(this.built)
+    			throw new IllegalStateException("the heap was already built");
+    		this.built = true;
+    		this.local.remove();
+    		int links_before = total_links;
+    		this.heaps.parallelStream().filter(heap -> !heap.isEmpty()).forEach(FibonacciHeap::consolidation);
+    		FibonacciHeap res = new FibonacciHeap();
+    		int links = 0;
+    		for(FibonacciHeap heap : this.heaps)
+    		{
+    			links += heap.last_consolidation_links;
+    			res.meld(heap);
+    			heap.clear(); // a producer thread may keep its local heap alive
+    		}
+    		total_links = links_before + links; // link counts the links of the parallel consolidations racily
+    		this.heaps.clear();
+    		return res;
+    	}
+
+    	/**
+    	 * private FibonacciHeap localHeap()
+    	 *
+    	 * Returns the local heap of the calling thread, creating it on the first call.
+    	 */
+    	private FibonacciHeap localHeap()
+    	{
+    		if(this.built)
+    			throw new IllegalStateException("the heap was already built");
+    		FibonacciHeap heap = this.local.get();
+    		if(heap == null)
+    		{
+    			heap = new FibonacciHeap();
+    			this.local.set(heap);
+    			this.heaps.add(heap);
+    		}
+    		return heap;
+    	}
+    }
+
+   /**
+    * public static class MinIterator
+    *
+    * Iterates over the keys of a heap in ascending order without changing the heap.
+    * The frontier (nodes whose parent was already returned) is kept in a 4-ary min-heap of node references,
+    * which starts with the roots. Returning a node replaces it in the frontier with its children.
+    * The frontier array is kept between reset calls, so one iterator can be reused for many peeks.
+    * The heap must not be changed while it is iterated.
+    */
+    public static class MinIterator implements PrimitiveIterator.OfInt
+    {
+    	private static final int D = 4; // arity of the frontier heap
+    	private HeapNode[] frontier;
+    	private int count;
+
+    	public MinIterator(FibonacciHeap H)
+    	{
+    		this.frontier = new HeapNode[16];
+    		reset(H);
+    	}
+
+    	/**
+    	 * public void reset(FibonacciHeap H)
+    	 *
+    	 * Restarts the iteration from the minimum of H.
+    	 * Time Complexity: O(#trees)
+    	 */
+    	public void reset(FibonacciHeap H)
+    	{
+    		Arrays.fill(this.frontier, 0, this.count, null); // don't keep old nodes alive
+    		this.count = 0;
+    		if(H.isEmpty())
+    			return;
+    		HeapNode pointer = H.first;
+    		do { // add all roots
+    			if(this.count == this.frontier.length)
+    				this.frontier = Arrays.copyOf(this.frontier, 2*this.count);
+    			this.frontier[this.count++] = pointer;
+    			pointer = pointer.getNext();
+    		}while(pointer != H.first);
+    		for(int i = (this.count - 2)/D; i >= 0; i--) // heapify the roots
+    			siftDown(i);
+    	}
+
+    	public boolean hasNext()
+    	{
+    		return this.count > 0;
+    	}
+
+    	/**
+    	 * public int nextInt()
+    	 *
+    	 * Returns the next smallest key.
+    	 * Time Complexity: O(deg*log(frontier size))
+    	 */
+    	public int nextInt()
+    	{
+    		if(this.count == 0)
+    			throw new NoSuchElementException();
+    		HeapNode curr_min = this.frontier[0];
+    		this.count --;
+    		this.frontier[0] = this.frontier[this.count];
+    		this.frontier[this.count] = null;
+    		if(this.count > 0)
+    			siftDown(0);
+    		HeapNode curr_min_child = curr_min.getChild();
+    		for(int i=0 ; i< curr_min.rank ; i++) // add all the children of the returned node
     		{
-    			inserted = kMin_heap.insert(curr_min_child.key);
-    			inserted.setNodeReference(curr_min_child); 
+    			push(curr_min_child);
     			curr_min_child = curr_min_child.next;
     		}
-    		kMin_heap.deleteMin();
-    		index ++;
+    		return curr_min.key;
+    	}
+
+    	private void push(HeapNode x)
+    	{
+    		if(this.count == this.frontier.length)
+    			this.frontier = Arrays.copyOf(this.frontier, 2*this.count);
+    		int i = this.count++;
+    		while(i > 0) // sift up
+    		{
+    			int parent = (i - 1)/D;
+    			if(this.frontier[parent].key <= x.key)
+    				break;
+    			this.frontier[i] = this.frontier[parent];
+    			i = parent;
+    		}
+    		this.frontier[i] = x;
+    	}
+
+    	private void siftDown(int i)
+    	{
+    		HeapNode x = this.frontier[i];
+    		while(true)
+    		{
+    			int first_child = D*i + 1;
+    			if(first_child >= this.count)
+    				break;
+    			int smallest = first_child;
+    			int last_child = Math.min(first_child + D, this.count);
+    			for(int c = first_child + 1; c < last_child; c++)
+    				if(this.frontier[c].key < this.frontier[smallest].key)
+    					smallest = c;
+    			if(this.frontier[smallest].key >= x.key)
+    				break;
+    			this.frontier[i] = this.frontier[smallest];
+    			i = smallest;
+    		}
+    		this.frontier[i] = x;
     	}
-        return res; 
     }
     
    /**
@@ -540,7 +1146,7 @@ public class FibonacciHeap
     * 
     *  
     */
-    public static class HeapNode{
+    public static class HeapNode implements IntPriorityQueue.Handle{
 
     	public int key;
     	private int rank; // number of children
@@ -549,7 +1155,7 @@ public class FibonacciHeap
     	private HeapNode next;
     	private HeapNode prev;
     	private HeapNode parent;
-    	private HeapNode node_reference; //needed for kmin
+    	int trace_id; // the id of the node in the trace of its heap
     	
     	
     	public HeapNode(int key) {
@@ -562,14 +1168,6 @@ public class FibonacciHeap
     	}
     	
     	
-    	public void setNodeReference(HeapNode i)
-    	{
-    		this.node_reference = i;
-    	}
-    	public HeapNode getNodeReference()
-    	{
-    		return this.node_reference;
-    	}
     	public int getKey() 
     	{
     		return this.key;
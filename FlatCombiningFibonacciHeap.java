@@ -0,0 +1,331 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FlatCombiningFibonacciHeap
+ *
+ * A thread safe front end for one sequential Fibonacci heap, using flat combining.
+ *
+ * Every thread publishes its request (insert, deleteMin or decreaseKey) in its own slot.
+ * The thread that takes the combiner lock applies all the published requests as one batch:
+ * decreaseKeys first, then all inserts are spliced in with a single insertAll, and then all deleteMins
+ * are served by a single pollMin, so the heap is consolidated once per batch instead of once per deleteMin.
+ * The other threads spin on their slots until their request is served (or until they become the combiner).
+ *
+ * Requests of the same batch are concurrent, so every order between them is linearizable.
+ * A thread takes a slot on its first request and keeps it while it's alive; the slot of a thread that terminated
+ * is taken over by the next thread that needs one, so pools that replace their threads don't run out of slots.
+ * Threads beyond the slot capacity still work, but each of their requests is applied alone under the lock,
+ * and they look for a free slot again on their next request.
+ */
+public class FlatCombiningFibonacciHeap
+{
+	private static final int NONE = 0;
+	private static final int INSERT = 1;
+	private static final int DELETE_MIN = 2;
+	private static final int DECREASE_KEY = 3;
+	private static final int MAX_SPINS = 256; // spins before a waiting thread yields its processor
+
+	private final FibonacciHeap heap;
+	private final ReentrantLock combiner_lock;
+	private final AtomicReferenceArray<Slot> slots;
+	private final AtomicInteger num_of_slots; // the slots below this index may be in use, the combiner scans them
+	private final ThreadLocal<Slot> my_slot;
+	private volatile int size;
+
+	// batch buffers, used only by the combiner
+	private int[] insert_keys;
+	private Slot[] insert_slots;
+	private Slot[] delete_slots;
+	private FibonacciHeap.HeapNode[] deleted;
+
+	/**
+	 * public FlatCombiningFibonacciHeap()
+	 *
+	 * Creates an empty heap with a slot for every available processor (and some spare).
+	 */
+	public FlatCombiningFibonacciHeap()
+	{
+		this(4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * public FlatCombiningFibonacciHeap(int max_threads)
+	 *
+	 * Creates an empty heap with max_threads publication slots.
+	 * pre: max_threads > 0
+	 */
+	public FlatCombiningFibonacciHeap(int max_threads)
+	{
+		if(max_threads <= 0)
+			throw new IllegalArgumentException("max_threads must be positive");
+		this.heap = new FibonacciHeap();
+		this.combiner_lock = new ReentrantLock();
+		this.slots = new AtomicReferenceArray<>(max_threads);
+		this.num_of_slots = new AtomicInteger();
+		this.my_slot = new ThreadLocal<>();
+		this.insert_keys = new int[max_threads];
+		this.insert_slots = new Slot[max_threads];
+		this.delete_slots = new Slot[max_threads];
+		this.deleted = new FibonacciHeap.HeapNode[max_threads];
+	}
+
+	/**
+	 * public HeapNode insert(int key)
+	 *
+	 * Inserts the key into the heap.
+	 * The added key is assumed not to already belong to the heap.
+	 *
+	 * Returns the newly created node.
+	 */
+	public FibonacciHeap.HeapNode insert(int key)
+	{
+		Slot slot = slot();
+		slot.key = key;
+		return execute(slot, INSERT);
+	}
+
+	/**
+	 * public HeapNode deleteMin()
+	 *
+	 * Deletes the node containing the minimum key.
+	 *
+	 * Returns the deleted node, or null if the heap is empty.
+	 */
+	public FibonacciHeap.HeapNode deleteMin()
+	{
+		return execute(slot(), DELETE_MIN);
+	}
+
+	/**
+	 * public void decreaseKey(HeapNode x, int delta)
+	 *
+	 * Decreases the key of the node x by a non-negative value delta.
+	 * It is assumed that x indeed belongs to the heap.
+	 */
+	public void decreaseKey(FibonacciHeap.HeapNode x, int delta)
+	{
+		Slot slot = slot();
+		slot.node = x;
+		slot.key = delta;
+		execute(slot, DECREASE_KEY);
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of elements in the heap after the last batch.
+	 * Time Complexity: O(1)
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * Returns true if the heap was empty after the last batch.
+	 * Time Complexity: O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	/**
+	 * private Slot slot()
+	 *
+	 * Returns the slot of the current thread, takes a slot on the first call.
+	 * Returns a private (unregistered) slot if all slots are taken by live threads.
+	 */
+	private Slot slot()
+	{
+		Slot slot = this.my_slot.get();
+		if(slot != null)
+			return slot;
+		slot = claim();
+		if(slot == null)
+		{
+			slot = new Slot(Thread.currentThread());
+			slot.registered = false;
+		}
+		else
+			this.my_slot.set(slot);
+		return slot;
+	}
+
+	/**
+	 * private Slot claim()
+	 *
+	 * Puts a new slot of the current thread in the first empty slot, or in the place of an idle slot whose owner
+	 * terminated. Returns null if all the slots belong to live threads.
+	 * Time Complexity: O(number of slots)
+	 */
+	private Slot claim()
+	{
+		Thread me = Thread.currentThread();
+		for(int i = 0; i < this.slots.length(); i++)
+		{
+			Slot old = this.slots.get(i);
+			if(old != null && (old.owner.isAlive() || old.op != NONE))
+				continue;
+			Slot slot = new Slot(me);
+			if(this.slots.compareAndSet(i, old, slot))
+			{
+				this.num_of_slots.accumulateAndGet(i + 1, Math::max); // before the thread publishes a request
+				return slot;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * private HeapNode execute(Slot slot, int op)
+	 *
+	 * Publishes the request and waits until some combiner has served it.
+	 */
+	private FibonacciHeap.HeapNode execute(Slot slot, int op)
+	{
+		if(!slot.registered) // no slot for this thread, work directly under the lock
+		{
+			this.combiner_lock.lock();
+			try
+			{
+				slot.op = op;
+				apply(slot);
+				combine();
+			}
+			finally
+			{
+				this.combiner_lock.unlock();
+			}
+			return slot.result;
+		}
+		slot.op = op; // publish
+		for(int spins = 0; slot.op != NONE; spins++)
+		{
+			if(this.combiner_lock.tryLock())
+			{
+				try
+				{
+					combine();
+				}
+				finally
+				{
+					this.combiner_lock.unlock();
+				}
+			}
+			else if(spins < MAX_SPINS)
+				Thread.onSpinWait();
+			else // the combiner may be descheduled, e.g. with more threads than processors
+				Thread.yield();
+		}
+		return slot.result;
+	}
+
+	/**
+	 * private void combine()
+	 *
+	 * pre: the current thread holds combiner_lock
+	 * Serves all published requests as one batch.
+	 */
+	private void combine()
+	{
+		int inserts = 0;
+		int deletes = 0;
+		int count = this.num_of_slots.get();
+		for(int i = 0; i < count; i++)
+		{
+			Slot slot = this.slots.get(i);
+			if(slot == null)
+				continue;
+			int op = slot.op;
+			if(op == INSERT)
+			{
+				this.insert_keys[inserts] = slot.key;
+				this.insert_slots[inserts] = slot;
+				inserts ++;
+			}
+			else if(op == DELETE_MIN)
+			{
+				this.delete_slots[deletes] = slot;
+				deletes ++;
+			}
+			else if(op == DECREASE_KEY)
+				apply(slot);
+		}
+		if(inserts > 0) // splice all the inserted nodes at once
+		{
+			FibonacciHeap.HeapNode[] nodes = this.heap.insertAll(inserts == this.insert_keys.length
+					? this.insert_keys : Arrays.copyOf(this.insert_keys, inserts));
+			for(int i = 0; i < inserts; i++)
+			{
+				this.insert_slots[i].result = nodes[i];
+				this.insert_slots[i].op = NONE;
+				this.insert_slots[i] = null;
+			}
+		}
+		if(deletes > 0) // one consolidation for all deleteMins
+		{
+			int found = this.heap.pollMin(deletes, this.deleted);
+			for(int i = 0; i < deletes; i++)
+			{
+				this.delete_slots[i].result = i < found ? this.deleted[i] : null;
+				this.delete_slots[i].op = NONE;
+				this.delete_slots[i] = null;
+				this.deleted[i] = null;
+			}
+		}
+		this.size = this.heap.size();
+	}
+
+	/**
+	 * private void apply(Slot slot)
+	 *
+	 * pre: the current thread holds combiner_lock
+	 * Serves a single request.
+	 */
+	private void apply(Slot slot)
+	{
+		if(slot.op == INSERT)
+			slot.result = this.heap.insert(slot.key);
+		else if(slot.op == DELETE_MIN)
+		{
+			slot.result = this.heap.findMin();
+			this.heap.deleteMin();
+		}
+		else if(slot.op == DECREASE_KEY)
+		{
+			this.heap.decreaseKey(slot.node, slot.key);
+			slot.result = null;
+		}
+		slot.node = null;
+		this.size = this.heap.size();
+		slot.op = NONE;
+	}
+
+	/**
+	 * private static class Slot
+	 *
+	 * The publication record of one thread.
+	 * The arguments are written before op, and the result is written before op is reset to NONE,
+	 * so the volatile op field orders them between the owner and the combiner.
+	 */
+	private static class Slot
+	{
+		final Thread owner;
+		volatile int op = NONE;
+		int key; // the key to insert, or the delta of decreaseKey
+		FibonacciHeap.HeapNode node;
+		FibonacciHeap.HeapNode result;
+		boolean registered = true;
+
+		Slot(Thread owner)
+		{
+			this.owner = owner;
+		}
+	}
+}
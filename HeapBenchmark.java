@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * HeapBenchmark
+ *
+ * A benchmark matrix of the IntPriorityQueue engines (FibonacciHeap, PairingHeap, RankPairingHeap, DaryHeap,
+ * RadixHeap) on three workloads:
+ * dijkstra - single source shortest paths on a random sparse graph (insert, decreaseKey, deleteMin),
+ * events - a hold-model event simulation: a pending set of fixed size, every step pops the earliest event and
+ * schedules a new one after it (insert, deleteMin),
+ * topk - the k largest keys of a stream, with a min-heap of size k (insert, findMin, deleteMin).
+ * All the workloads are monotone, so RadixHeap can run them too.
+ *
+ * java HeapBenchmark [engine ...]
+ * runs the given engines (all if none are given) and prints the median time of ROUNDS runs after WARMUP runs,
+ * and a checksum of the results, which must be the same for all the engines. The workloads call the engines
+ * through the interface, so run one engine per JVM to give every engine its own JIT profile.
+ */
+public class HeapBenchmark
+{
+	private static final int WARMUP = 3;
+	private static final int ROUNDS = 5;
+	private static final int GRAPH_VERTICES = 200_000;
+	private static final int GRAPH_DEGREE = 8;
+	private static final int MAX_WEIGHT = 1000;
+	private static final int PENDING_EVENTS = 100_000;
+	private static final int EVENT_STEPS = 2_000_000;
+	private static final int STREAM_LENGTH = 5_000_000;
+	private static final int TOP_K = 1000;
+
+	public static void main(String[] args)
+	{
+		Map<String, Supplier<? extends IntPriorityQueue<?, ?>>> engines = new LinkedHashMap<>();
+		engines.put("FibonacciHeap", FibonacciHeap::new);
+		engines.put("PairingHeap", PairingHeap::new);
+		engines.put("RankPairingHeap", RankPairingHeap::new);
+		engines.put("DaryHeap", DaryHeap::new);
+		engines.put("RadixHeap", RadixHeap::new);
+		List<String> names = args.length == 0 ? new ArrayList<>(engines.keySet()) : Arrays.asList(args);
+		Random rnd = new Random(1);
+		Graph graph = new Graph(GRAPH_VERTICES, GRAPH_DEGREE, rnd);
+		int[] increments = new int[EVENT_STEPS];
+		for(int i = 0; i < increments.length; i++)
+			increments[i] = 1 + (int) (-Math.log(1 - rnd.nextDouble()) * MAX_WEIGHT); // exponential gaps
+		int[] stream = new int[STREAM_LENGTH];
+		for(int i = 0; i < stream.length; i++)
+			stream[i] = rnd.nextInt(Integer.MAX_VALUE);
+		System.out.printf("%-10s %-16s %10s %20s%n", "workload", "engine", "median ms", "checksum");
+		for(String name : names)
+		{
+			Supplier<? extends IntPriorityQueue<?, ?>> engine = engines.get(name);
+			if(engine == null)
+				throw new IllegalArgumentException("unknown engine " + name + ", expected one of " + engines.keySet());
+			report("dijkstra", name, () -> dijkstra(engine, graph, 0));
+			report("events", name, () -> events(engine, increments));
+			report("topk", name, () -> topK(engine, stream, TOP_K));
+		}
+	}
+
+	/**
+	 * public static long dijkstra(Supplier<? extends IntPriorityQueue<?, ?>> engine, Graph graph, int source)
+	 *
+	 * Runs Dijkstra's algorithm from source, and returns the sum of the distances of the reachable vertices.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static long dijkstra(Supplier<? extends IntPriorityQueue<?, ?>> engine, Graph graph, int source)
+	{
+		int n = graph.start.length - 1;
+		int[] dist = new int[n];
+		Arrays.fill(dist, Integer.MAX_VALUE);
+		IntPriorityQueue.Handle[] handles = new IntPriorityQueue.Handle[n];
+		boolean[] done = new boolean[n];
+		IntPriorityQueue queue = engine.get(); // the keys are distance * n + vertex, so the vertex of the min is known
+		dist[source] = 0;
+		handles[source] = queue.insert(source);
+		long sum = 0;
+		while(!queue.isEmpty())
+		{
+			int v = queue.findMin().getKey() % n;
+			queue.deleteMin();
+			done[v] = true;
+			sum += dist[v];
+			for(int e = graph.start[v]; e < graph.start[v + 1]; e++)
+			{
+				int w = graph.target[e];
+				int d = dist[v] + graph.weight[e];
+				if(done[w] || d >= dist[w])
+					continue;
+				if(d > (Integer.MAX_VALUE - w) / n)
+					throw new IllegalStateException("the distances are too large for the key encoding");
+				if(handles[w] == null)
+					handles[w] = queue.insert(d * n + w);
+				else
+					queue.decreaseKey(handles[w], (dist[w] - d) * n);
+				dist[w] = d;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * public static long events(Supplier<? extends IntPriorityQueue<?, ?>> engine, int[] increments)
+	 *
+	 * Runs increments.length steps of a hold model with PENDING_EVENTS pending events: every step deletes
+	 * the earliest event and schedules one increments[step] later. Returns the time of the last event.
+	 */
+	public static long events(Supplier<? extends IntPriorityQueue<?, ?>> engine, int[] increments)
+	{
+		IntPriorityQueue<?, ?> queue = engine.get();
+		for(int i = 0; i < PENDING_EVENTS; i++)
+			queue.insert(increments[i]);
+		int now = 0;
+		for(int step = 0; step < increments.length; step++)
+		{
+			now = queue.findMin().getKey();
+			queue.deleteMin();
+			queue.insert(now + increments[step]);
+		}
+		return now;
+	}
+
+	/**
+	 * public static long topK(Supplier<? extends IntPriorityQueue<?, ?>> engine, int[] stream, int k)
+	 *
+	 * Keeps the k largest keys of the stream in a min-heap, and returns their sum.
+	 */
+	public static long topK(Supplier<? extends IntPriorityQueue<?, ?>> engine, int[] stream, int k)
+	{
+		IntPriorityQueue<?, ?> queue = engine.get();
+		for(int key : stream)
+		{
+			if(queue.size() < k)
+				queue.insert(key);
+			else if(key > queue.findMin().getKey())
+			{
+				queue.deleteMin();
+				queue.insert(key);
+			}
+		}
+		long sum = 0;
+		while(!queue.isEmpty())
+		{
+			sum += queue.findMin().getKey();
+			queue.deleteMin();
+		}
+		return sum;
+	}
+
+	/**
+	 * private static void report(String workload, String engine, Supplier<Long> run)
+	 *
+	 * Runs the workload WARMUP + ROUNDS times and prints the median time of the last ROUNDS runs.
+	 */
+	private static void report(String workload, String engine, Supplier<Long> run)
+	{
+		long[] nanos = new long[ROUNDS];
+		long checksum = 0;
+		for(int i = -WARMUP; i < ROUNDS; i++)
+		{
+			long start = System.nanoTime();
+			checksum = run.get();
+			if(i >= 0)
+				nanos[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(nanos);
+		System.out.printf("%-10s %-16s %10.1f %20d%n", workload, engine, nanos[ROUNDS / 2] / 1e6, checksum);
+	}
+
+	/**
+	 * public static class Graph
+	 *
+	 * A random directed graph in compressed sparse row form: the edges of v are start[v] to start[v + 1] - 1.
+	 * Every vertex v has an edge to v + 1, so all the vertices are reachable from 0.
+	 * The weights are at most MAX_WEIGHT, and distance * vertices fits in an int for the sizes used here.
+	 */
+	public static class Graph
+	{
+		final int[] start;
+		final int[] target;
+		final int[] weight;
+
+		public Graph(int vertices, int degree, Random rnd)
+		{
+			this.start = new int[vertices + 1];
+			this.target = new int[vertices * degree];
+			this.weight = new int[vertices * degree];
+			for(int v = 0; v < vertices; v++)
+			{
+				this.start[v + 1] = (v + 1) * degree;
+				for(int e = v * degree; e < (v + 1) * degree; e++)
+				{
+					this.target[e] = e == v * degree ? (v + 1) % vertices : rnd.nextInt(vertices);
+					this.weight[e] = 1 + rnd.nextInt(MAX_WEIGHT);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,207 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * HeapMetrics
+ *
+ * Records the deleteMin operations of one or more FibonacciHeaps (see FibonacciHeap.setMetrics),
+ * including every deletion of pollMin and drainWhile:
+ * a histogram of deleteMin latencies, a histogram of consolidation lengths (roots scanned),
+ * and the tree-shape gauges of the heap as of its last deleteMin.
+ *
+ * The histograms use power-of-two buckets: bucket 0 counts zeros, bucket i counts values in [2^(i-1), 2^i).
+ * The metrics can be read through JMX (register), and every recorded deleteMin is also emitted as a
+ * "FibonacciHeap.DeleteMin" JFR event when that event is enabled in a recording.
+ */
+public class HeapMetrics implements HeapMetricsMXBean
+{
+	private static final int NUM_OF_BUCKETS = 65;
+	private final AtomicLongArray latency_histogram;
+	private final AtomicLongArray consolidation_histogram;
+	private volatile int num_of_trees;
+	private volatile int max_rank;
+	private volatile int marked_count;
+	private volatile int last_consolidation_roots;
+	private volatile int last_consolidation_links;
+
+	public HeapMetrics()
+	{
+		this.latency_histogram = new AtomicLongArray(NUM_OF_BUCKETS);
+		this.consolidation_histogram = new AtomicLongArray(NUM_OF_BUCKETS);
+	}
+
+	/**
+	 * void recordDeleteMin(FibonacciHeap heap, long nanos)
+	 *
+	 * Called by FibonacciHeap.deleteMin after it finished.
+	 * Time Complexity: O(1)
+	 */
+	void recordDeleteMin(FibonacciHeap heap, long nanos)
+	{
+		this.latency_histogram.incrementAndGet(bucketOf(nanos));
+		this.consolidation_histogram.incrementAndGet(bucketOf(heap.lastConsolidationRoots()));
+		recordShape(heap);
+		DeleteMinEvent event = new DeleteMinEvent();
+		if(event.isEnabled())
+		{
+			event.latencyNanos = nanos;
+			event.consolidationRoots = heap.lastConsolidationRoots();
+			event.consolidationLinks = heap.lastConsolidationLinks();
+			event.numOfTrees = heap.numOfTrees();
+			event.commit();
+		}
+	}
+
+	/**
+	 * void recordShape(FibonacciHeap heap)
+	 *
+	 * Updates the tree-shape gauges without recording a deleteMin.
+	 * Called by FibonacciHeap when it consolidates at the end of a batch of deletions (pollMin, drainWhile).
+	 * Time Complexity: O(1)
+	 */
+	void recordShape(FibonacciHeap heap)
+	{
+		this.num_of_trees = heap.numOfTrees();
+		this.max_rank = heap.maxRank();
+		this.marked_count = heap.markedCount();
+		this.last_consolidation_roots = heap.lastConsolidationRoots();
+		this.last_consolidation_links = heap.lastConsolidationLinks();
+	}
+
+	/**
+	 * public ObjectName register(String name)
+	 *
+	 * Registers the metrics in the platform MBean server as FibonacciHeap:type=HeapMetrics,name=[name].
+	 * Returns the name it was registered under.
+	 */
+	public ObjectName register(String name) throws JMException
+	{
+		ObjectName objectName = new ObjectName("FibonacciHeap:type=HeapMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	public long getDeleteMinCount()
+	{
+		long count = 0;
+		for(int i = 0; i < NUM_OF_BUCKETS; i++)
+			count += this.latency_histogram.get(i);
+		return count;
+	}
+
+	public long[] getDeleteMinLatencyHistogram()
+	{
+		return snapshot(this.latency_histogram);
+	}
+
+	public long[] getConsolidationLengthHistogram()
+	{
+		return snapshot(this.consolidation_histogram);
+	}
+
+	/**
+	 * public long deleteMinLatencyPercentile(double percentile)
+	 *
+	 * Returns an upper bound (the end of the histogram bucket) on the given latency percentile in nanoseconds,
+	 * or 0 if nothing was recorded.
+	 * pre: 0 < percentile <= 100
+	 */
+	public long deleteMinLatencyPercentile(double percentile)
+	{
+		long[] histogram = getDeleteMinLatencyHistogram();
+		long count = 0;
+		for(long c : histogram)
+			count += c;
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for(int i = 0; i < NUM_OF_BUCKETS; i++)
+		{
+			seen += histogram[i];
+			if(seen >= rank && seen > 0)
+				return i == 0 ? 0 : (i >= 64 ? Long.MAX_VALUE : (1L << i) - 1);
+		}
+		return 0;
+	}
+
+	public int getNumOfTrees()
+	{
+		return this.num_of_trees;
+	}
+
+	public int getMaxRank()
+	{
+		return this.max_rank;
+	}
+
+	public int getMarkedCount()
+	{
+		return this.marked_count;
+	}
+
+	public int getLastConsolidationRoots()
+	{
+		return this.last_consolidation_roots;
+	}
+
+	public int getLastConsolidationLinks()
+	{
+		return this.last_consolidation_links;
+	}
+
+	/**
+	 * public void reset()
+	 *
+	 * Clears the histograms.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < NUM_OF_BUCKETS; i++)
+		{
+			this.latency_histogram.set(i, 0);
+			this.consolidation_histogram.set(i, 0);
+		}
+	}
+
+	private static int bucketOf(long value)
+	{
+		return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+	}
+
+	private static long[] snapshot(AtomicLongArray histogram)
+	{
+		long[] res = new long[NUM_OF_BUCKETS];
+		for(int i = 0; i < NUM_OF_BUCKETS; i++)
+			res[i] = histogram.get(i);
+		return res;
+	}
+
+	/**
+	 * static class DeleteMinEvent
+	 *
+	 * The JFR event of a recorded deleteMin.
+	 */
+	@Name("FibonacciHeap.DeleteMin")
+	@Label("Fibonacci Heap deleteMin")
+	@Category("Data Structures")
+	static class DeleteMinEvent extends Event
+	{
+		@Label("Latency (ns)")
+		long latencyNanos;
+
+		@Label("Consolidation Roots")
+		int consolidationRoots;
+
+		@Label("Consolidation Links")
+		int consolidationLinks;
+
+		@Label("Trees After")
+		int numOfTrees;
+	}
+}
@@ -0,0 +1,27 @@
+/**
+ * HeapMetricsMXBean
+ *
+ * The JMX view of HeapMetrics.
+ */
+public interface HeapMetricsMXBean
+{
+	public long getDeleteMinCount();
+
+	public long[] getDeleteMinLatencyHistogram();
+
+	public long[] getConsolidationLengthHistogram();
+
+	public long deleteMinLatencyPercentile(double percentile);
+
+	public int getNumOfTrees();
+
+	public int getMaxRank();
+
+	public int getMarkedCount();
+
+	public int getLastConsolidationRoots();
+
+	public int getLastConsolidationLinks();
+
+	public void reset();
+}
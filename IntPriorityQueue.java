@@ -0,0 +1,64 @@
+/**
+ * IntPriorityQueue
+ *
+ * The operations of an addressable priority queue over integers, as implemented by FibonacciHeap.
+ * H is the type of the handles (nodes) returned by insert, Q is the implementing class itself,
+ * so that meld only accepts a queue of the same kind.
+ *
+ * Implementations: FibonacciHeap, PairingHeap, RankPairingHeap, DaryHeap, RadixHeap.
+ */
+public interface IntPriorityQueue<H extends IntPriorityQueue.Handle, Q extends IntPriorityQueue<H, Q>>
+{
+	/**
+	 * Returns true if and only if the queue is empty.
+	 */
+	public boolean isEmpty();
+
+	/**
+	 * Inserts the key into the queue and returns its handle.
+	 * The added key is assumed not to already belong to the queue.
+	 */
+	public H insert(int key);
+
+	/**
+	 * Returns the handle of the minimal key, or null if the queue is empty.
+	 */
+	public H findMin();
+
+	/**
+	 * Deletes the minimal key, does nothing if the queue is empty.
+	 */
+	public void deleteMin();
+
+	/**
+	 * Decreases the key of x by a non-negative value delta.
+	 * It is assumed that x indeed belongs to the queue.
+	 */
+	public void decreaseKey(H x, int delta);
+
+	/**
+	 * Deletes x from the queue.
+	 * It is assumed that x indeed belongs to the queue.
+	 */
+	public void delete(H x);
+
+	/**
+	 * Melds heap2 into the queue. heap2 must not be used afterwards.
+	 */
+	public void meld(Q heap2);
+
+	/**
+	 * Returns the number of elements in the queue.
+	 */
+	public int size();
+
+	/**
+	 * public interface Handle
+	 *
+	 * A key stored in a queue.
+	 */
+	public interface Handle
+	{
+		public int getKey();
+	}
+}
@@ -0,0 +1,256 @@
+import java.util.Arrays;
+
+/**
+ * IntRadixHeap
+ *
+ * A Radix Heap over integers for monotone workloads (such as Dijkstra's algorithm with integer weights),
+ * with the same buckets as RadixHeap but without node objects: an element is an int handle,
+ * an index into parallel arrays of keys, buckets and list links.
+ *
+ * The keys that are inserted (or decreased to) must not be smaller than the last deleted minimum,
+ * otherwise IllegalArgumentException is thrown.
+ * A handle is valid until its element is deleted, after that it may be reused by insert.
+ */
+public class IntRadixHeap
+{
+	private static final int NUM_OF_BUCKETS = 33;
+	private static final int NONE = -1;
+	private final int[] buckets; // head of the list of every bucket
+	private int[] keys;
+	private int[] bucket; // bucket of every handle, NONE for free handles
+	private int[] next; // next handle in the same bucket, or in the free list
+	private int[] prev;
+	private int free; // head of the free list
+	private int used; // handles [0, used) were given out at least once
+	private int last; // the last deleted minimum
+	private int min; // cached min handle, NONE if unknown
+	private int size;
+
+	public IntRadixHeap()
+	{
+		this(16);
+	}
+
+	/**
+	 * public IntRadixHeap(int capacity)
+	 *
+	 * Creates an empty heap with room for capacity elements (it grows when needed).
+	 */
+	public IntRadixHeap(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		this.buckets = new int[NUM_OF_BUCKETS];
+		Arrays.fill(this.buckets, NONE);
+		this.keys = new int[capacity];
+		this.bucket = new int[capacity];
+		this.next = new int[capacity];
+		this.prev = new int[capacity];
+		this.free = NONE;
+		this.used = 0;
+		this.last = Integer.MIN_VALUE;
+		this.min = NONE;
+		this.size = 0;
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * Returns true if and only if the heap is empty.
+	 * Time Complexity: O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	/**
+	 * public int insert(int key)
+	 *
+	 * Inserts the key and returns its handle.
+	 * Time Complexity: O(1) amortized
+	 */
+	public int insert(int key)
+	{
+		checkMonotone(key);
+		int x;
+		if(this.free != NONE) // reuse a deleted handle
+		{
+			x = this.free;
+			this.free = this.next[x];
+		}
+		else
+		{
+			if(this.used == this.keys.length)
+				grow();
+			x = this.used++;
+		}
+		this.keys[x] = key;
+		addToBucket(x);
+		if(this.min != NONE && key < this.keys[this.min])
+			this.min = x;
+		this.size++;
+		return x;
+	}
+
+	/**
+	 * public int getKey(int x)
+	 *
+	 * Returns the key of the handle x.
+	 * Time Complexity: O(1)
+	 */
+	public int getKey(int x)
+	{
+		return this.keys[x];
+	}
+
+	/**
+	 * public int findMin()
+	 *
+	 * Returns the handle of the minimal key, or -1 if the heap is empty.
+	 * Time Complexity: O(1) amortized
+	 */
+	public int findMin()
+	{
+		if(this.min != NONE || isEmpty())
+			return this.min;
+		if(this.buckets[0] != NONE) // keys equal to last
+		{
+			this.min = this.buckets[0];
+			return this.min;
+		}
+		int i = 1;
+		while(this.buckets[i] == NONE)
+			i++;
+		int minHandle = this.buckets[i];
+		for(int x = this.next[minHandle]; x != NONE; x = this.next[x])
+			if(this.keys[x] < this.keys[minHandle])
+				minHandle = x;
+		this.min = minHandle;
+		return minHandle;
+	}
+
+	/**
+	 * public void deleteMin()
+	 *
+	 * Deletes the minimal key (see RadixHeap.deleteMin).
+	 * Time Complexity: O(log C) amortized, C is the range of the keys
+	 */
+	public void deleteMin()
+	{
+		if(isEmpty())
+			return;
+		int minHandle = findMin();
+		int b = this.bucket[minHandle];
+		if(b != 0)
+		{
+			this.last = this.keys[minHandle];
+			int x = this.buckets[b];
+			this.buckets[b] = NONE;
+			while(x != NONE) // move the bucket to lower buckets
+			{
+				int nextHandle = this.next[x];
+				addToBucket(x);
+				x = nextHandle;
+			}
+		}
+		release(minHandle);
+		this.min = NONE;
+	}
+
+	/**
+	 * public void decreaseKey(int x, int delta)
+	 *
+	 * Decreases the key of x by a non-negative value delta.
+	 * Time Complexity: O(1)
+	 */
+	public void decreaseKey(int x, int delta)
+	{
+		int key = this.keys[x] - delta;
+		checkMonotone(key);
+		this.keys[x] = key;
+		if(bucketOf(key) != this.bucket[x])
+		{
+			removeFromBucket(x);
+			addToBucket(x);
+		}
+		if(this.min != NONE && key < this.keys[this.min])
+			this.min = x;
+	}
+
+	/**
+	 * public void delete(int x)
+	 *
+	 * Deletes x from the heap.
+	 * Time Complexity: O(1)
+	 */
+	public void delete(int x)
+	{
+		if(this.min == x)
+			this.min = NONE;
+		release(x);
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of elements in the heap.
+	 * Time Complexity: O(1)
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	private void checkMonotone(int key)
+	{
+		if(key < this.last)
+			throw new IllegalArgumentException("key " + key + " is smaller than the last deleted minimum " + this.last);
+	}
+
+	private int bucketOf(int key)
+	{
+		return 32 - Integer.numberOfLeadingZeros(key ^ this.last);
+	}
+
+	/**
+	 * removes x from its bucket and adds it to the free list.
+	 */
+	private void release(int x)
+	{
+		removeFromBucket(x);
+		this.bucket[x] = NONE;
+		this.next[x] = this.free;
+		this.free = x;
+		this.size--;
+	}
+
+	private void addToBucket(int x)
+	{
+		int i = bucketOf(this.keys[x]);
+		this.bucket[x] = i;
+		this.prev[x] = NONE;
+		this.next[x] = this.buckets[i];
+		if(this.buckets[i] != NONE)
+			this.prev[this.buckets[i]] = x;
+		this.buckets[i] = x;
+	}
+
+	private void removeFromBucket(int x)
+	{
+		if(this.prev[x] == NONE)
+			this.buckets[this.bucket[x]] = this.next[x];
+		else
+			this.next[this.prev[x]] = this.next[x];
+		if(this.next[x] != NONE)
+			this.prev[this.next[x]] = this.prev[x];
+	}
+
+	private void grow()
+	{
+		int capacity = 2 * this.keys.length;
+		this.keys = Arrays.copyOf(this.keys, capacity);
+		this.bucket = Arrays.copyOf(this.bucket, capacity);
+		this.next = Arrays.copyOf(this.next, capacity);
+		this.prev = Arrays.copyOf(this.prev, capacity);
+	}
+}
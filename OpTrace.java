@@ -0,0 +1,709 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Supplier;
+
+/**
+ * OpTrace
+ *
+ * Records the operations of AVLTrees and FibonacciHeaps to a compact binary trace file, so a real workload
+ * can be replayed offline against other implementations (see Replayer).
+ * Recording is opt-in (AVLTree.setTrace, FibonacciHeap.setTrace), a structure without a trace only pays for
+ * a null check per operation.
+ *
+ * Recorded operations: insert, delete, search, split and join of a tree, insert, deleteMin (also the deletions
+ * of pollMin and drainWhile), decreaseKey, delete and meld of a heap.
+ * Every recorded tree, heap and heap node gets an id, in the order they are first recorded, so that the trees made
+ * by split and the nodes given to decreaseKey can be found again in the replay. A structure that joins the trace
+ * with items (setTrace on a non-empty structure, or a join/meld with a structure that isn't recorded by the trace)
+ * is recorded as a new structure followed by inserts of its items.
+ *
+ * A record is an opcode byte followed by varints (zig-zag encoded for keys and deltas). Values of trees are
+ * not stored, only their length, the replay uses a String of the same length.
+ * The records are encoded into a direct buffer that is written with a FileChannel when it fills up.
+ * A trace is not thread safe: the structures that record into it must be used by one thread at a time.
+ */
+public class OpTrace implements Closeable
+{
+	private static final int MAGIC = 0x4f505452; // "OPTR"
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_RECORD = 1 + 4 * 5; // opcode and up to 4 varints
+
+	static final byte TREE_NEW = 1;
+	static final byte TREE_INSERT = 2; // tree, key, value length + 1 (0 for null)
+	static final byte TREE_DELETE = 3; // tree, key
+	static final byte TREE_SEARCH = 4; // tree, key
+	static final byte TREE_SPLIT = 5; // tree, key; the two parts get the next two tree ids
+	static final byte TREE_JOIN = 6; // tree, key, value length + 1, other tree
+	static final byte HEAP_NEW = 7;
+	static final byte HEAP_INSERT = 8; // heap, key; the node gets the next node id
+	static final byte HEAP_DELETE_MIN = 9; // heap
+	static final byte HEAP_DECREASE_KEY = 10; // heap, node, delta
+	static final byte HEAP_DELETE = 11; // heap, node
+	static final byte HEAP_MELD = 12; // heap, other heap
+	private static final String[] NAMES = {null, "tree new", "tree insert", "tree delete", "tree search",
+			"tree split", "tree join", "heap new", "heap insert", "heap deleteMin", "heap decreaseKey",
+			"heap delete", "heap meld"};
+	private static final int NUM_OF_OPS = NAMES.length;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private int num_of_trees;
+	private int num_of_heaps;
+	private int num_of_nodes;
+	private long num_of_records;
+
+	/**
+	 * public OpTrace(Path file)
+	 *
+	 * Creates (or truncates) the trace file.
+	 */
+	public OpTrace(Path file) throws IOException
+	{
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		this.buffer.putInt(MAGIC);
+		this.buffer.put((byte) VERSION);
+	}
+
+	/**
+	 * public long records()
+	 *
+	 * Returns the number of records written so far.
+	 */
+	public long records()
+	{
+		return this.num_of_records;
+	}
+
+	/**
+	 * public void flush()
+	 *
+	 * Writes the buffered records to the file.
+	 */
+	public void flush() throws IOException
+	{
+		this.buffer.flip();
+		while(this.buffer.hasRemaining())
+			this.channel.write(this.buffer);
+		this.buffer.clear();
+	}
+
+	/**
+	 * public void close()
+	 *
+	 * Flushes and closes the file. The structures must not record into the trace afterwards.
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			this.channel.close();
+		}
+	}
+
+	void treeInsert(AVLTree t, int key, String value)
+	{
+		begin(TREE_INSERT);
+		putVarint(t.traceId);
+		putVarint(zigZag(key));
+		putVarint(value == null ? 0 : value.length() + 1);
+	}
+
+	void treeDelete(AVLTree t, int key)
+	{
+		begin(TREE_DELETE);
+		putVarint(t.traceId);
+		putVarint(zigZag(key));
+	}
+
+	void treeSearch(AVLTree t, int key)
+	{
+		begin(TREE_SEARCH);
+		putVarint(t.traceId);
+		putVarint(zigZag(key));
+	}
+
+	/**
+	 * void treeSplit(AVLTree t, int key, AVLTree[] parts)
+	 *
+	 * Records the split of t, and starts recording the two parts.
+	 */
+	void treeSplit(AVLTree t, int key, AVLTree[] parts)
+	{
+		begin(TREE_SPLIT);
+		putVarint(t.traceId);
+		putVarint(zigZag(key));
+		for(AVLTree part : parts)
+		{
+			part.trace = this;
+			part.traceId = this.num_of_trees++;
+		}
+	}
+
+	/**
+	 * void treeJoin(AVLTree t, AVLTree.IAVLNode x, AVLTree other)
+	 *
+	 * Records the join of x and other into t, called before the join.
+	 */
+	void treeJoin(AVLTree t, AVLTree.IAVLNode x, AVLTree other)
+	{
+		if(other.trace != this)
+			addTree(other);
+		begin(TREE_JOIN);
+		putVarint(t.traceId);
+		putVarint(zigZag(x.getKey()));
+		putVarint(x.getValue() == null ? 0 : x.getValue().length() + 1);
+		putVarint(other.traceId);
+	}
+
+	/**
+	 * void addTree(AVLTree t)
+	 *
+	 * Starts recording t: records a new tree and inserts of its items in ascending key order.
+	 */
+	void addTree(AVLTree t)
+	{
+		t.trace = this;
+		t.traceId = this.num_of_trees++;
+		begin(TREE_NEW);
+		ArrayDeque<AVLTree.AVLNode> stack = new ArrayDeque<>();
+		AVLTree.AVLNode x = t.root;
+		while(x.isRealNode() || !stack.isEmpty()) // in-order walk
+		{
+			if(x.isRealNode())
+			{
+				stack.push(x);
+				x = (AVLTree.AVLNode) x.getLeft();
+				continue;
+			}
+			x = stack.pop();
+			treeInsert(t, x.getKey(), x.getValue());
+			x = (AVLTree.AVLNode) x.getRight();
+		}
+	}
+
+	void heapInsert(FibonacciHeap heap, FibonacciHeap.HeapNode node)
+	{
+		node.trace_id = this.num_of_nodes++;
+		begin(HEAP_INSERT);
+		putVarint(heap.trace_id);
+		putVarint(zigZag(node.getKey()));
+	}
+
+	void heapDeleteMin(FibonacciHeap heap)
+	{
+		begin(HEAP_DELETE_MIN);
+		putVarint(heap.trace_id);
+	}
+
+	void heapDecreaseKey(FibonacciHeap heap, FibonacciHeap.HeapNode node, int delta)
+	{
+		begin(HEAP_DECREASE_KEY);
+		putVarint(heap.trace_id);
+		putVarint(node.trace_id);
+		putVarint(zigZag(delta));
+	}
+
+	void heapDelete(FibonacciHeap heap, FibonacciHeap.HeapNode node)
+	{
+		begin(HEAP_DELETE);
+		putVarint(heap.trace_id);
+		putVarint(node.trace_id);
+	}
+
+	/**
+	 * void heapMeld(FibonacciHeap heap, FibonacciHeap other)
+	 *
+	 * Records the meld of other into heap, called before the meld.
+	 */
+	void heapMeld(FibonacciHeap heap, FibonacciHeap other)
+	{
+		if(other.trace != this)
+			addHeap(other);
+		begin(HEAP_MELD);
+		putVarint(heap.trace_id);
+		putVarint(other.trace_id);
+	}
+
+	/**
+	 * void addHeap(FibonacciHeap heap)
+	 *
+	 * Starts recording heap: records a new heap and inserts of all its nodes.
+	 */
+	void addHeap(FibonacciHeap heap)
+	{
+		heap.trace = this;
+		heap.trace_id = this.num_of_heaps++;
+		begin(HEAP_NEW);
+		if(heap.isEmpty())
+			return;
+		ArrayDeque<FibonacciHeap.HeapNode> lists = new ArrayDeque<>(); // the sibling lists left to visit
+		lists.push(heap.findMin());
+		while(!lists.isEmpty())
+		{
+			FibonacciHeap.HeapNode first = lists.pop();
+			FibonacciHeap.HeapNode x = first;
+			do {
+				heapInsert(heap, x);
+				if(x.getChild() != null)
+					lists.push(x.getChild());
+				x = x.getNext();
+			} while(x != first);
+		}
+	}
+
+	/**
+	 * private void begin(byte op)
+	 *
+	 * Makes room for a record in the buffer and writes its opcode.
+	 */
+	private void begin(byte op)
+	{
+		if(this.buffer.remaining() < MAX_RECORD)
+		{
+			try
+			{
+				flush();
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+		this.buffer.put(op);
+		this.num_of_records++;
+	}
+
+	private void putVarint(int value)
+	{
+		while((value & ~0x7f) != 0)
+		{
+			this.buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		this.buffer.put((byte) value);
+	}
+
+	private static int zigZag(int value)
+	{
+		return (value << 1) ^ (value >> 31);
+	}
+
+	/**
+	 * public static void main(String[] args)
+	 *
+	 * Replays a trace against AVLTree and FibonacciHeap and prints a report per iteration:
+	 * java OpTrace <trace file> [iterations]
+	 * The first iterations warm up the JIT, the last report is the one to compare.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length == 0)
+		{
+			System.err.println("usage: java OpTrace <trace file> [iterations]");
+			System.exit(2);
+		}
+		Replayer replayer = new Replayer(Paths.get(args[0]));
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		for(int i = 1; i <= iterations; i++)
+		{
+			System.out.println("iteration " + i + ":");
+			System.out.println(replayer.replay(AVLTree::new, FibonacciHeap::new));
+		}
+	}
+
+	/**
+	 * public static class Replayer
+	 *
+	 * Reruns a trace against any implementation: the trees are made by a Supplier of AVLTrees (AVLTree, HashedTree,
+	 * RelaxedTree, ...) and the heaps by a Supplier of IntPriorityQueues (FibonacciHeap, PairingHeap, ...).
+	 * The trace is decoded once, in the constructor, so a replay only runs the operations.
+	 */
+	public static class Replayer
+	{
+		private final int[] program; // opcodes and their arguments
+		private final int num_of_records;
+		private final int num_of_trees;
+		private final int num_of_heaps;
+		private final int num_of_nodes;
+		private final String[] values; // the distinct values, the program refers to them by their index
+
+		/**
+		 * public Replayer(Path file)
+		 *
+		 * Reads and decodes the trace. Throws IOException if the file isn't a valid trace.
+		 */
+		public Replayer(Path file) throws IOException
+		{
+			MappedByteBuffer in;
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+			{
+				in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			if(in.remaining() < 5 || in.getInt() != MAGIC || in.get() != VERSION)
+				throw new IOException(file + " is not an operation trace");
+			int[] program = new int[1024];
+			int length = 0, records = 0, trees = 0, heaps = 0, nodes = 0;
+			HashMap<Integer, Integer> value_ids = new HashMap<>(); // value length + 1 -> index in values
+			String[] values = new String[16];
+			while(in.hasRemaining())
+			{
+				if(length + MAX_RECORD > program.length)
+					program = Arrays.copyOf(program, 2 * program.length);
+				int op = in.get();
+				if(op <= 0 || op >= NUM_OF_OPS)
+					throw new IOException("bad opcode " + op + " at " + (in.position() - 1));
+				program[length++] = op;
+				records++;
+				for(int i = arity(op); i > 0; i--)
+					program[length++] = getVarint(in);
+				switch(op)
+				{
+					case TREE_NEW:
+						trees++;
+						break;
+					case TREE_SPLIT:
+						trees += 2;
+						break;
+					case HEAP_NEW:
+						heaps++;
+						break;
+					case HEAP_INSERT:
+						nodes++;
+						break;
+					case TREE_INSERT:
+					case TREE_JOIN:
+						int at = op == TREE_INSERT ? length - 1 : length - 2;
+						Integer id = value_ids.get(program[at]);
+						if(id == null)
+						{
+							id = value_ids.size();
+							value_ids.put(program[at], id);
+							if(id == values.length)
+								values = Arrays.copyOf(values, 2 * id);
+							values[id] = valueOfLength(program[at] - 1);
+						}
+						program[at] = id;
+						break;
+				}
+			}
+			this.program = Arrays.copyOf(program, length);
+			this.num_of_records = records;
+			this.num_of_trees = trees;
+			this.num_of_heaps = heaps;
+			this.num_of_nodes = nodes;
+			this.values = Arrays.copyOf(values, value_ids.size());
+		}
+
+		/**
+		 * private static String valueOfLength(int n)
+		 *
+		 * Returns a String of length n as the stand-in for a recorded value, or null if n is -1 (a null value).
+		 */
+		private static String valueOfLength(int n)
+		{
+			if(n < 0)
+				return null;
+			char[] chars = new char[n];
+			Arrays.fill(chars, 'v');
+			return new String(chars);
+		}
+
+		/**
+		 * public int records()
+		 *
+		 * Returns the number of operations in the trace.
+		 */
+		public int records()
+		{
+			return this.num_of_records;
+		}
+
+		/**
+		 * public Report replay(Supplier<? extends AVLTree> trees, Supplier<? extends IntPriorityQueue<?, ?>> heaps)
+		 *
+		 * Runs the operations of the trace once, on new structures, and measures them.
+		 * Every operation is timed separately, so the throughput includes the cost of System.nanoTime.
+		 */
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public Report replay(Supplier<? extends AVLTree> trees, Supplier<? extends IntPriorityQueue<?, ?>> heaps)
+		{
+			AVLTree[] tree = new AVLTree[this.num_of_trees];
+			IntPriorityQueue[] heap = new IntPriorityQueue[this.num_of_heaps];
+			IntPriorityQueue.Handle[] node = new IntPriorityQueue.Handle[this.num_of_nodes];
+			int next_tree = 0, next_heap = 0, next_node = 0;
+			Report report = new Report();
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			int[] p = this.program;
+			int pc = 0;
+			while(pc < p.length)
+			{
+				int op = p[pc];
+				long t0 = System.nanoTime();
+				switch(op)
+				{
+					case TREE_NEW:
+						tree[next_tree++] = trees.get();
+						break;
+					case TREE_INSERT:
+						tree[p[pc + 1]].insert(unZigZag(p[pc + 2]), this.values[p[pc + 3]]);
+						break;
+					case TREE_DELETE:
+						tree[p[pc + 1]].delete(unZigZag(p[pc + 2]));
+						break;
+					case TREE_SEARCH:
+						tree[p[pc + 1]].search(unZigZag(p[pc + 2]));
+						break;
+					case TREE_SPLIT:
+						AVLTree[] parts = tree[p[pc + 1]].split(unZigZag(p[pc + 2]));
+						tree[next_tree++] = parts[0];
+						tree[next_tree++] = parts[1];
+						break;
+					case TREE_JOIN:
+						tree[p[pc + 1]].join(new AVLTree.AVLNode(unZigZag(p[pc + 2]), this.values[p[pc + 3]]), tree[p[pc + 4]]);
+						break;
+					case HEAP_NEW:
+						heap[next_heap++] = heaps.get();
+						break;
+					case HEAP_INSERT:
+						node[next_node++] = heap[p[pc + 1]].insert(unZigZag(p[pc + 2]));
+						break;
+					case HEAP_DELETE_MIN:
+						heap[p[pc + 1]].deleteMin();
+						break;
+					case HEAP_DECREASE_KEY:
+						heap[p[pc + 1]].decreaseKey(node[p[pc + 2]], unZigZag(p[pc + 3]));
+						break;
+					case HEAP_DELETE:
+						heap[p[pc + 1]].delete(node[p[pc + 2]]);
+						break;
+					case HEAP_MELD:
+						heap[p[pc + 1]].meld(heap[p[pc + 2]]);
+						break;
+				}
+				report.record(op, System.nanoTime() - t0);
+				pc += 1 + arity(op);
+			}
+			report.nanos = System.nanoTime() - start;
+			report.allocated_bytes = allocated < 0 ? -1 : allocatedBytes() - allocated;
+			return report;
+		}
+
+		private static int arity(int op)
+		{
+			switch(op)
+			{
+				case TREE_NEW:
+				case HEAP_NEW:
+					return 0;
+				case HEAP_DELETE_MIN:
+					return 1;
+				case TREE_INSERT:
+				case HEAP_DECREASE_KEY:
+					return 3;
+				case TREE_JOIN:
+					return 4;
+				default:
+					return 2;
+			}
+		}
+
+		private static int getVarint(ByteBuffer in) throws IOException
+		{
+			int value = 0;
+			for(int shift = 0; shift < 35; shift += 7)
+			{
+				if(!in.hasRemaining())
+					throw new IOException("truncated trace");
+				int b = in.get();
+				value |= (b & 0x7f) << shift;
+				if((b & 0x80) == 0)
+					return value;
+			}
+			throw new IOException("bad varint at " + in.position());
+		}
+
+		private static int unZigZag(int value)
+		{
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		/**
+		 * private static long allocatedBytes()
+		 *
+		 * Returns the bytes allocated so far by the current thread, or -1 if the JVM doesn't count them.
+		 */
+		private static long allocatedBytes()
+		{
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if(!(threads instanceof com.sun.management.ThreadMXBean))
+				return -1;
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+	}
+
+	/**
+	 * public static class Report
+	 *
+	 * The measurements of a replay: the total time, the bytes allocated by the replaying thread,
+	 * and a latency histogram per operation.
+	 * The histograms are log-linear: 16 buckets per power of two, so a percentile is exact up to 1/16.
+	 */
+	public static class Report
+	{
+		private static final int SUB_BUCKETS = 16;
+		private static final int NUM_OF_BUCKETS = (64 - 3) * SUB_BUCKETS;
+		private final long[][] histograms = new long[NUM_OF_OPS][NUM_OF_BUCKETS];
+		private final long[] counts = new long[NUM_OF_OPS];
+		private long nanos;
+		private long allocated_bytes;
+
+		private Report()
+		{
+		}
+
+		/**
+		 * public long operations()
+		 *
+		 * Returns the number of replayed operations.
+		 */
+		public long operations()
+		{
+			long res = 0;
+			for(long c : this.counts)
+				res += c;
+			return res;
+		}
+
+		/**
+		 * public long nanos()
+		 *
+		 * Returns the total time of the replay.
+		 */
+		public long nanos()
+		{
+			return this.nanos;
+		}
+
+		/**
+		 * public double throughput()
+		 *
+		 * Returns the replayed operations per second.
+		 */
+		public double throughput()
+		{
+			return this.nanos == 0 ? 0 : operations() * 1e9 / this.nanos;
+		}
+
+		/**
+		 * public long allocatedBytes()
+		 *
+		 * Returns the bytes allocated during the replay, or -1 if the JVM doesn't count them.
+		 */
+		public long allocatedBytes()
+		{
+			return this.allocated_bytes;
+		}
+
+		/**
+		 * public long latencyPercentile(double percentile)
+		 *
+		 * Returns an upper bound (the end of the histogram bucket) on the given latency percentile of all the operations
+		 * in nanoseconds, or 0 if nothing was replayed.
+		 * pre: 0 < percentile <= 100
+		 */
+		public long latencyPercentile(double percentile)
+		{
+			long[] all = new long[NUM_OF_BUCKETS];
+			for(long[] histogram : this.histograms)
+				for(int i = 0; i < NUM_OF_BUCKETS; i++)
+					all[i] += histogram[i];
+			return percentile(all, operations(), percentile);
+		}
+
+		/**
+		 * public String toString()
+		 *
+		 * Returns the totals and a line per replayed operation type with its count and latency percentiles.
+		 */
+		public String toString()
+		{
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%d ops in %.1f ms, %.0f ops/s, %s allocated%n", operations(), this.nanos / 1e6,
+					throughput(), this.allocated_bytes < 0 ? "unknown" : this.allocated_bytes + " bytes"));
+			sb.append(String.format("%-17s %12s %10s %10s %10s %10s%n", "operation", "count", "p50 ns", "p99 ns",
+					"p99.9 ns", "max ns"));
+			for(int op = 1; op < NUM_OF_OPS; op++)
+			{
+				if(this.counts[op] == 0)
+					continue;
+				long[] h = this.histograms[op];
+				long n = this.counts[op];
+				sb.append(String.format("%-17s %12d %10d %10d %10d %10d%n", NAMES[op], n, percentile(h, n, 50),
+						percentile(h, n, 99), percentile(h, n, 99.9), percentile(h, n, 100)));
+			}
+			return sb.toString();
+		}
+
+		private void record(int op, long nanos)
+		{
+			this.histograms[op][bucketOf(nanos)]++;
+			this.counts[op]++;
+		}
+
+		private static long percentile(long[] histogram, long count, double percentile)
+		{
+			long rank = (long) Math.ceil(count * percentile / 100);
+			long seen = 0;
+			for(int i = 0; i < NUM_OF_BUCKETS; i++)
+			{
+				seen += histogram[i];
+				if(seen >= rank && seen > 0)
+					return upperBoundOf(i);
+			}
+			return 0;
+		}
+
+		/**
+		 * private static int bucketOf(long value)
+		 *
+		 * Values below 16 have their own buckets, a larger value with highest bit e goes to one of the 16 buckets
+		 * of [2^e, 2^(e+1)) by its 4 bits after the highest bit.
+		 */
+		private static int bucketOf(long value)
+		{
+			if(value < SUB_BUCKETS)
+				return value < 0 ? 0 : (int) value;
+			int e = 63 - Long.numberOfLeadingZeros(value);
+			return (e - 3) * SUB_BUCKETS + (int) ((value >>> (e - 4)) & (SUB_BUCKETS - 1));
+		}
+
+		private static long upperBoundOf(int bucket)
+		{
+			if(bucket < SUB_BUCKETS)
+				return bucket;
+			int e = bucket / SUB_BUCKETS + 3;
+			long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (e - 4);
+			return lower + (1L << (e - 4)) - 1;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+import java.util.Arrays;
+
+/**
+ * PairingHeap
+ *
+ * An implementation of a (two-pass) Pairing Heap over integers.
+ * Every node keeps its leftmost child, its right sibling and the node on its left
+ * (its left sibling, or its parent if it is the leftmost child).
+ */
+public class PairingHeap implements IntPriorityQueue<PairingHeap.HeapNode, PairingHeap>
+{
+	private HeapNode root;
+	private int size;
+	private HeapNode[] pairs; // reused by deleteMin for the first pass
+
+	public PairingHeap()
+	{
+		this.root = null;
+		this.size = 0;
+		this.pairs = new HeapNode[16];
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * Returns true if and only if the heap is empty.
+	 * Time Complexity: O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return this.root == null;
+	}
+
+	/**
+	 * public HeapNode insert(int key)
+	 *
+	 * Creates a node which contains the given key, and links it with the root.
+	 * Returns the newly created node.
+	 * Time Complexity: O(1)
+	 */
+	public HeapNode insert(int key)
+	{
+		HeapNode newNode = new HeapNode(key);
+		this.root = this.root == null ? newNode : link(this.root, newNode);
+		this.size++;
+		return newNode;
+	}
+
+	/**
+	 * public HeapNode findMin()
+	 *
+	 * Returns the node of the heap whose key is minimal, or null if the heap is empty.
+	 * Time Complexity: O(1)
+	 */
+	public HeapNode findMin()
+	{
+		return this.root;
+	}
+
+	/**
+	 * public void deleteMin()
+	 *
+	 * Deletes the root and pairs its children in two passes.
+	 * Time Complexity: O(log n) amortized
+	 */
+	public void deleteMin()
+	{
+		if(isEmpty())
+			return;
+		HeapNode children = this.root.child;
+		this.root.child = null;
+		this.root = mergePairs(children);
+		this.size--;
+	}
+
+	/**
+	 * public void decreaseKey(HeapNode x, int delta)
+	 *
+	 * Decreases the key of x by a non-negative value delta, cuts x's subtree and links it with the root.
+	 * Time Complexity: O(log n) amortized
+	 */
+	public void decreaseKey(HeapNode x, int delta)
+	{
+		x.key -= delta;
+		if(x == this.root)
+			return;
+		cut(x);
+		this.root = link(this.root, x);
+	}
+
+	/**
+	 * public void delete(HeapNode x)
+	 *
+	 * Deletes x: its subtree is cut, and x's children are paired and linked back with the root.
+	 * Time Complexity: O(log n) amortized
+	 */
+	public void delete(HeapNode x)
+	{
+		if(x == this.root)
+		{
+			deleteMin();
+			return;
+		}
+		cut(x);
+		HeapNode children = x.child;
+		x.child = null;
+		if(children != null)
+			this.root = link(this.root, mergePairs(children));
+		this.size--;
+	}
+
+	/**
+	 * public void meld(PairingHeap heap2)
+	 *
+	 * Melds heap2 with the current heap.
+	 * Time Complexity: O(1)
+	 */
+	public void meld(PairingHeap heap2)
+	{
+		if(heap2.isEmpty())
+			return;
+		this.root = this.root == null ? heap2.root : link(this.root, heap2.root);
+		this.size += heap2.size;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of elements in the heap.
+	 * Time Complexity: O(1)
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * private HeapNode link(HeapNode a, HeapNode b)
+	 *
+	 * pre: a, b are roots (no left node, no sibling)
+	 * makes the root with the bigger key the leftmost child of the other one, returns the new root.
+	 * Time Complexity: O(1)
+	 */
+	private HeapNode link(HeapNode a, HeapNode b)
+	{
+		HeapNode smaller = a.key <= b.key ? a : b;
+		HeapNode bigger = smaller == a ? b : a;
+		bigger.sibling = smaller.child;
+		if(smaller.child != null)
+			smaller.child.left = bigger;
+		bigger.left = smaller;
+		smaller.child = bigger;
+		smaller.left = null;
+		smaller.sibling = null;
+		return smaller;
+	}
+
+	/**
+	 * private void cut(HeapNode x)
+	 *
+	 * pre: x isn't the root
+	 * disconnects x (with its subtree) from its parent and siblings.
+	 * Time Complexity: O(1)
+	 */
+	private void cut(HeapNode x)
+	{
+		if(x.left.child == x) // x is the leftmost child
+			x.left.child = x.sibling;
+		else
+			x.left.sibling = x.sibling;
+		if(x.sibling != null)
+			x.sibling.left = x.left;
+		x.left = null;
+		x.sibling = null;
+	}
+
+	/**
+	 * private HeapNode mergePairs(HeapNode first)
+	 *
+	 * Links the siblings first, first.sibling, ... in pairs from left to right,
+	 * and then links the results from right to left. Returns the new root (null if first is null).
+	 * Time Complexity: O(number of siblings)
+	 */
+	private HeapNode mergePairs(HeapNode first)
+	{
+		int count = 0;
+		HeapNode curr = first;
+		while(curr != null) // first pass
+		{
+			HeapNode a = curr;
+			HeapNode b = a.sibling;
+			curr = b == null ? null : b.sibling;
+			a.left = null;
+			a.sibling = null;
+			if(b != null)
+			{
+				b.left = null;
+				b.sibling = null;
+				a = link(a, b);
+			}
+			if(count == this.pairs.length)
+				this.pairs = Arrays.copyOf(this.pairs, 2 * count);
+			this.pairs[count++] = a;
+		}
+		if(count == 0)
+			return null;
+		HeapNode result = this.pairs[--count];
+		this.pairs[count] = null;
+		while(count > 0) // second pass
+		{
+			result = link(this.pairs[--count], result);
+			this.pairs[count] = null;
+		}
+		return result;
+	}
+
+	/**
+	 * public static class HeapNode
+	 */
+	public static class HeapNode implements IntPriorityQueue.Handle
+	{
+		private int key;
+		private HeapNode child;
+		private HeapNode sibling;
+		private HeapNode left;
+
+		private HeapNode(int key)
+		{
+			this.key = key;
+		}
+
+		public int getKey()
+		{
+			return this.key;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+import java.util.Arrays;
+
+/**
+ * PrimBenchmark
+ *
+ * A decreaseKey-heavy FibonacciHeap workload: Prim's minimum spanning tree algorithm on a complete graph with
+ * pseudo-random weights. Every decreaseKey is timed on its own (so the times include the cost of
+ * System.nanoTime), and the latency distribution of the measured runs is printed, together with the
+ * number of cascading cuts.
+ *
+ * java PrimBenchmark [vertices] [runs]
+ * The first WARMUP runs aren't measured.
+ */
+public class PrimBenchmark
+{
+	private static final int WARMUP = 3;
+	private static final int MAX_WEIGHT = 1 << 16;
+
+	public static void main(String[] args)
+	{
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		if((long) MAX_WEIGHT * n + n > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too many vertices for the key encoding");
+		Latencies measured = new Latencies();
+		long total = 0, weight = 0, cuts = 0;
+		for(int run = -WARMUP; run < runs; run++)
+		{
+			Latencies sample = run < 0 ? new Latencies() : measured;
+			int cutsBefore = FibonacciHeap.totalCuts();
+			long start = System.nanoTime();
+			weight = prim(new FibonacciHeap(), n, sample);
+			if(run >= 0)
+			{
+				total += System.nanoTime() - start;
+				cuts += FibonacciHeap.totalCuts() - cutsBefore;
+			}
+		}
+		long[] latencies = measured.values;
+		int count = measured.count;
+		Arrays.sort(latencies, 0, count);
+		System.out.printf("vertices %d, tree weight %d, %d decreaseKeys and %d cuts per run, %.1f ms per run%n",
+				n, weight, count / runs, cuts / runs, total / 1e6 / runs);
+		System.out.printf("decreaseKey ns: p50 %d, p90 %d, p99 %d, p99.9 %d, p99.99 %d, max %d%n",
+				percentile(latencies, count, 0.5), percentile(latencies, count, 0.9),
+				percentile(latencies, count, 0.99), percentile(latencies, count, 0.999),
+				percentile(latencies, count, 0.9999), latencies[count - 1]);
+	}
+
+	/**
+	 * private static long prim(FibonacciHeap heap, int n, Latencies sample)
+	 *
+	 * Runs Prim's algorithm from vertex 0, adds the latency of every decreaseKey to sample, and returns
+	 * the weight of the spanning tree.
+	 * The key of a vertex is its distance to the tree times n plus the vertex, so the vertex of the min is known.
+	 */
+	private static long prim(FibonacciHeap heap, int n, Latencies sample)
+	{
+		FibonacciHeap.HeapNode[] node = new FibonacciHeap.HeapNode[n];
+		int[] dist = new int[n];
+		boolean[] inTree = new boolean[n];
+		for(int v = 1; v < n; v++)
+		{
+			dist[v] = MAX_WEIGHT;
+			node[v] = heap.insert(MAX_WEIGHT * n + v);
+		}
+		long weight = 0;
+		int u = 0;
+		inTree[0] = true;
+		for(int added = 1; added < n; added++)
+		{
+			for(int v = 1; v < n; v++)
+			{
+				int w = weight(u, v);
+				if(inTree[v] || w >= dist[v])
+					continue;
+				long t0 = System.nanoTime();
+				heap.decreaseKey(node[v], (dist[v] - w) * n);
+				sample.add(System.nanoTime() - t0);
+				dist[v] = w;
+			}
+			u = heap.findMin().getKey() % n;
+			heap.deleteMin();
+			inTree[u] = true;
+			weight += dist[u];
+		}
+		return weight;
+	}
+
+	/**
+	 * private static int weight(int u, int v)
+	 *
+	 * The weight of the edge {u, v}, a hash of the pair below MAX_WEIGHT.
+	 */
+	private static int weight(int u, int v)
+	{
+		long h = (long) Math.min(u, v) << 32 | Math.max(u, v);
+		h *= 0x9E3779B97F4A7C15L;
+		h ^= h >>> 31;
+		h *= 0xBF58476D1CE4E5B9L;
+		return (int) ((h >>> 33) % MAX_WEIGHT);
+	}
+
+	private static long percentile(long[] sorted, int count, double p)
+	{
+		return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+	}
+
+	/**
+	 * private static class Latencies
+	 *
+	 * A growing array of measured times.
+	 */
+	private static class Latencies
+	{
+		long[] values = new long[1 << 16];
+		int count;
+
+		void add(long nanos)
+		{
+			if(this.count == this.values.length)
+				this.values = Arrays.copyOf(this.values, 2 * this.count);
+			this.values[this.count++] = nanos;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/**
+ * RadixHeap
+ *
+ * An implementation of a Radix Heap over integers, for monotone workloads: the keys that are inserted
+ * (or decreased to) must not be smaller than the last deleted minimum.
+ *
+ * Bucket 0 holds the keys equal to the last deleted minimum, and bucket i (1 <= i <= 32) holds the keys whose
+ * highest bit that differs from the last deleted minimum is bit i-1. When bucket 0 is empty, deleteMin moves the
+ * first non-empty bucket to lower buckets, so every key moves at most 32 times.
+ */
+public class RadixHeap implements IntPriorityQueue<RadixHeap.HeapNode, RadixHeap>
+{
+	private static final int NUM_OF_BUCKETS = 33;
+	private final HeapNode[] buckets; // doubly linked lists
+	private int last; // the last deleted minimum
+	private HeapNode min; // cached min, null if unknown
+	private int size;
+
+	public RadixHeap()
+	{
+		this.buckets = new HeapNode[NUM_OF_BUCKETS];
+		this.last = Integer.MIN_VALUE;
+		this.min = null;
+		this.size = 0;
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * Returns true if and only if the heap is empty.
+	 * Time Complexity: O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	/**
+	 * public HeapNode insert(int key)
+	 *
+	 * Creates a node which contains the given key and adds it to its bucket.
+	 * Throws IllegalArgumentException if key is smaller than the last deleted minimum.
+	 * Returns the newly created node.
+	 * Time Complexity: O(1)
+	 */
+	public HeapNode insert(int key)
+	{
+		checkMonotone(key);
+		HeapNode newNode = new HeapNode(key);
+		addToBucket(newNode);
+		if(this.min != null && key < this.min.key)
+			this.min = newNode;
+		this.size++;
+		return newNode;
+	}
+
+	/**
+	 * public HeapNode findMin()
+	 *
+	 * Returns the node of the heap whose key is minimal, or null if the heap is empty.
+	 * Time Complexity: O(1) amortized
+	 */
+	public HeapNode findMin()
+	{
+		if(this.min != null || isEmpty())
+			return this.min;
+		if(this.buckets[0] != null) // keys equal to last
+		{
+			this.min = this.buckets[0];
+			return this.min;
+		}
+		int i = 1;
+		while(this.buckets[i] == null)
+			i++;
+		HeapNode minNode = this.buckets[i];
+		for(HeapNode x = minNode.next; x != null; x = x.next)
+			if(x.key < minNode.key)
+				minNode = x;
+		this.min = minNode;
+		return minNode;
+	}
+
+	/**
+	 * public void deleteMin()
+	 *
+	 * Deletes the node containing the minimum key. If it isn't in bucket 0,
+	 * its bucket is first redistributed around the new last deleted minimum.
+	 * Time Complexity: O(log C) amortized, C is the range of the keys
+	 */
+	public void deleteMin()
+	{
+		if(isEmpty())
+			return;
+		HeapNode minNode = findMin();
+		if(minNode.bucket != 0)
+		{
+			this.last = minNode.key;
+			HeapNode x = this.buckets[minNode.bucket];
+			this.buckets[minNode.bucket] = null;
+			while(x != null) // move the bucket to lower buckets
+			{
+				HeapNode next = x.next;
+				addToBucket(x);
+				x = next;
+			}
+		}
+		removeFromBucket(minNode);
+		this.min = null;
+		this.size--;
+	}
+
+	/**
+	 * public void decreaseKey(HeapNode x, int delta)
+	 *
+	 * Decreases the key of the node x by a non-negative value delta, and moves it to its new bucket.
+	 * Throws IllegalArgumentException if the new key is smaller than the last deleted minimum.
+	 * Time Complexity: O(1)
+	 */
+	public void decreaseKey(HeapNode x, int delta)
+	{
+		int key = x.key - delta;
+		checkMonotone(key);
+		x.key = key;
+		if(bucketOf(key) != x.bucket)
+		{
+			removeFromBucket(x);
+			addToBucket(x);
+		}
+		if(this.min != null && key < this.min.key)
+			this.min = x;
+	}
+
+	/**
+	 * public void delete(HeapNode x)
+	 *
+	 * Deletes the node x from the heap.
+	 * Time Complexity: O(1)
+	 */
+	public void delete(HeapNode x)
+	{
+		removeFromBucket(x);
+		if(this.min == x)
+			this.min = null;
+		this.size--;
+	}
+
+	/**
+	 * public void meld(RadixHeap heap2)
+	 *
+	 * Moves all the nodes of heap2 into the current heap.
+	 * Throws IllegalArgumentException if heap2 contains a key smaller than the last deleted minimum.
+	 * Time Complexity: O(heap2.size())
+	 */
+	public void meld(RadixHeap heap2)
+	{
+		if(heap2.isEmpty())
+			return;
+		checkMonotone(heap2.findMin().key);
+		for(int i = 0; i < NUM_OF_BUCKETS; i++)
+		{
+			HeapNode x = heap2.buckets[i];
+			heap2.buckets[i] = null;
+			while(x != null)
+			{
+				HeapNode next = x.next;
+				addToBucket(x);
+				x = next;
+			}
+		}
+		if(this.min != null && heap2.min.key < this.min.key)
+			this.min = heap2.min;
+		this.size += heap2.size;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of elements in the heap.
+	 * Time Complexity: O(1)
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	private void checkMonotone(int key)
+	{
+		if(key < this.last)
+			throw new IllegalArgumentException("key " + key + " is smaller than the last deleted minimum " + this.last);
+	}
+
+	/**
+	 * private int bucketOf(int key)
+	 *
+	 * pre: key >= last
+	 * Returns 0 if key == last, otherwise one plus the index of the highest bit in which key and last differ.
+	 */
+	private int bucketOf(int key)
+	{
+		return 32 - Integer.numberOfLeadingZeros(key ^ this.last);
+	}
+
+	private void addToBucket(HeapNode x)
+	{
+		int i = bucketOf(x.key);
+		x.bucket = i;
+		x.prev = null;
+		x.next = this.buckets[i];
+		if(this.buckets[i] != null)
+			this.buckets[i].prev = x;
+		this.buckets[i] = x;
+	}
+
+	private void removeFromBucket(HeapNode x)
+	{
+		if(x.prev == null)
+			this.buckets[x.bucket] = x.next;
+		else
+			x.prev.next = x.next;
+		if(x.next != null)
+			x.next.prev = x.prev;
+		x.prev = null;
+		x.next = null;
+	}
+
+	/**
+	 * public static class HeapNode
+	 */
+	public static class HeapNode implements IntPriorityQueue.Handle
+	{
+		private int key;
+		private int bucket;
+		private HeapNode prev;
+		private HeapNode next;
+
+		private HeapNode(int key)
+		{
+			this.key = key;
+		}
+
+		public int getKey()
+		{
+			return this.key;
+		}
+	}
+}
@@ -0,0 +1,308 @@
+import java.util.Arrays;
+
+/**
+ * RankPairingHeap
+ *
+ * An implementation of a one-pass, type-1 Rank-Pairing Heap over integers
+ * (Haeupler, Sen and Tarjan).
+ *
+ * The heap is a circular list of half-trees: binary trees whose root has only a left child, where every node's key
+ * is smaller than the keys in its left subtree. Ranks follow the type-1 rule: a node whose children have equal
+ * ranks r has rank r+1, otherwise it has the bigger rank of its children (a missing child has rank -1),
+ * and a root has the rank of its left child plus one.
+ */
+public class RankPairingHeap implements IntPriorityQueue<RankPairingHeap.HeapNode, RankPairingHeap>
+{
+	private HeapNode min;
+	private int size;
+	private HeapNode[] buckets; // reused by deleteMin, half-trees by rank
+
+	public RankPairingHeap()
+	{
+		this.min = null;
+		this.size = 0;
+		this.buckets = new HeapNode[32];
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * Returns true if and only if the heap is empty.
+	 * Time Complexity: O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return this.min == null;
+	}
+
+	/**
+	 * public HeapNode insert(int key)
+	 *
+	 * Adds a new half-tree of rank 0 to the root list.
+	 * Returns the newly created node.
+	 * Time Complexity: O(1)
+	 */
+	public HeapNode insert(int key)
+	{
+		HeapNode newNode = new HeapNode(key);
+		addRoot(newNode);
+		this.size++;
+		return newNode;
+	}
+
+	/**
+	 * public HeapNode findMin()
+	 *
+	 * Returns the node of the heap whose key is minimal, or null if the heap is empty.
+	 * Time Complexity: O(1)
+	 */
+	public HeapNode findMin()
+	{
+		return this.min;
+	}
+
+	/**
+	 * public void deleteMin()
+	 *
+	 * Deletes the min root, turns the right spine of its left child into half-trees,
+	 * and links half-trees of equal rank in a single pass.
+	 * Time Complexity: O(log n) amortized
+	 */
+	public void deleteMin()
+	{
+		if(isEmpty())
+			return;
+		HeapNode x = this.min;
+		this.size--;
+		this.min = null;
+		int max_rank = -1;
+		HeapNode root = x.next;
+		while(root != x) // the other half-trees
+		{
+			HeapNode next = root.next;
+			root.next = null;
+			max_rank = Math.max(max_rank, addToBucket(root));
+			root = next;
+		}
+		HeapNode spine = x.left;
+		while(spine != null) // the half-trees of x's left child
+		{
+			HeapNode next = spine.right;
+			spine.right = null;
+			spine.parent = null;
+			spine.rank = rank(spine.left) + 1;
+			max_rank = Math.max(max_rank, addToBucket(spine));
+			spine = next;
+		}
+		x.left = null;
+		x.next = null;
+		for(int i = 0; i <= max_rank; i++) // half-trees that weren't linked
+		{
+			if(this.buckets[i] != null)
+			{
+				addRoot(this.buckets[i]);
+				this.buckets[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * public void decreaseKey(HeapNode x, int delta)
+	 *
+	 * Decreases the key of x by a non-negative value delta. If x isn't a root, it is cut together with its left
+	 * subtree into a new half-tree, and the ranks of its former ancestors are reduced as needed.
+	 * Time Complexity: O(1) amortized
+	 */
+	public void decreaseKey(HeapNode x, int delta)
+	{
+		x.key -= delta;
+		if(x.parent == null) // x is a root
+		{
+			if(x.key < this.min.key)
+				this.min = x;
+			return;
+		}
+		cutToRoot(x);
+	}
+
+	/**
+	 * public void delete(HeapNode x)
+	 *
+	 * Deletes the node x by making it a root and deleting it as the min.
+	 * Time Complexity: O(log n) amortized
+	 */
+	public void delete(HeapNode x)
+	{
+		if(x.parent != null)
+			cutToRoot(x);
+		this.min = x;
+		deleteMin();
+	}
+
+	/**
+	 * public void meld(RankPairingHeap heap2)
+	 *
+	 * Concatenates the root lists.
+	 * Time Complexity: O(1)
+	 */
+	public void meld(RankPairingHeap heap2)
+	{
+		if(heap2.isEmpty())
+			return;
+		if(isEmpty())
+			this.min = heap2.min;
+		else
+		{
+			HeapNode this_next = this.min.next;
+			this.min.next = heap2.min.next;
+			heap2.min.next = this_next;
+			if(heap2.min.key < this.min.key)
+				this.min = heap2.min;
+		}
+		this.size += heap2.size;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of elements in the heap.
+	 * Time Complexity: O(1)
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * private void addRoot(HeapNode x)
+	 *
+	 * adds the half-tree x to the root list after min, and updates min.
+	 * Time Complexity: O(1)
+	 */
+	private void addRoot(HeapNode x)
+	{
+		if(this.min == null)
+		{
+			x.next = x;
+			this.min = x;
+			return;
+		}
+		x.next = this.min.next;
+		this.min.next = x;
+		if(x.key < this.min.key)
+			this.min = x;
+	}
+
+	/**
+	 * private int addToBucket(HeapNode x)
+	 *
+	 * puts the half-tree x in the bucket of its rank. If the bucket is taken, the two half-trees are linked
+	 * and the result goes straight to the root list (one-pass linking). Returns x's rank.
+	 * Time Complexity: O(1)
+	 */
+	private int addToBucket(HeapNode x)
+	{
+		int r = x.rank;
+		if(r >= this.buckets.length)
+			this.buckets = Arrays.copyOf(this.buckets, Math.max(2 * this.buckets.length, r + 1));
+		if(this.buckets[r] == null)
+			this.buckets[r] = x;
+		else
+		{
+			addRoot(link(this.buckets[r], x));
+			this.buckets[r] = null;
+		}
+		return r;
+	}
+
+	/**
+	 * private HeapNode link(HeapNode x, HeapNode y)
+	 *
+	 * pre: x, y are half-trees of equal rank
+	 * the loser becomes the left child of the winner, and the winner's old left child becomes the loser's right child.
+	 * Time Complexity: O(1)
+	 */
+	private HeapNode link(HeapNode x, HeapNode y)
+	{
+		if(y.key < x.key)
+		{
+			HeapNode temp = x;
+			x = y;
+			y = temp;
+		}
+		y.right = x.left;
+		if(x.left != null)
+			x.left.parent = y;
+		x.left = y;
+		y.parent = x;
+		x.rank++;
+		return x;
+	}
+
+	/**
+	 * private void cutToRoot(HeapNode x)
+	 *
+	 * pre: x isn't a root
+	 * replaces x by its right child, makes x (with its left subtree) a new half-tree
+	 * and restores the rank rule on the path to the root.
+	 * Time Complexity: O(1) amortized
+	 */
+	private void cutToRoot(HeapNode x)
+	{
+		HeapNode u = x.parent;
+		HeapNode y = x.right;
+		if(u.left == x)
+			u.left = y;
+		else
+			u.right = y;
+		if(y != null)
+			y.parent = u;
+		x.right = null;
+		x.parent = null;
+		x.rank = rank(x.left) + 1;
+		addRoot(x);
+		while(u != null) // rank reduction
+		{
+			if(u.parent == null) // u is a root
+			{
+				u.rank = rank(u.left) + 1;
+				break;
+			}
+			int r1 = rank(u.left);
+			int r2 = rank(u.right);
+			int k = r1 == r2 ? r1 + 1 : Math.max(r1, r2);
+			if(k >= u.rank)
+				break;
+			u.rank = k;
+			u = u.parent;
+		}
+	}
+
+	private static int rank(HeapNode x)
+	{
+		return x == null ? -1 : x.rank;
+	}
+
+	/**
+	 * public static class HeapNode
+	 */
+	public static class HeapNode implements IntPriorityQueue.Handle
+	{
+		private int key;
+		private int rank;
+		private HeapNode left;
+		private HeapNode right;
+		private HeapNode parent;
+		private HeapNode next; // next root, for roots only
+
+		private HeapNode(int key)
+		{
+			this.key = key;
+		}
+
+		public int getKey()
+		{
+			return this.key;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * TopKAccumulator
+ *
+ * Keeps the k smallest keys of an unbounded stream, using memory proportional to k.
+ *
+ * The candidates are kept in a FibonacciHeap over the complemented keys (~key reverses the order without
+ * overflowing), so findMin of the heap is the largest candidate, which is the threshold for new keys.
+ * A key that isn't smaller than the threshold of a full accumulator is rejected without allocating anything.
+ *
+ * An accumulator is not thread safe. To use several threads, give every thread its own accumulator
+ * and merge them at the end, merge melds the heaps in O(1) and trims the result back to k.
+ */
+public class TopKAccumulator
+{
+	private final int k;
+	private FibonacciHeap heap;
+	private int[] trimmed; // reused by merge
+
+	/**
+	 * public TopKAccumulator(int k)
+	 *
+	 * pre: k > 0
+	 */
+	public TopKAccumulator(int k)
+	{
+		if(k <= 0)
+			throw new IllegalArgumentException("k must be positive");
+		this.k = k;
+		this.heap = new FibonacciHeap();
+		this.trimmed = new int[0];
+	}
+
+	/**
+	 * public boolean offer(int key)
+	 *
+	 * Adds key to the candidates if it is one of the k smallest keys seen so far,
+	 * evicting the largest candidate if needed.
+	 * Returns true if the key was added.
+	 * Time Complexity: O(1) if rejected, O(log k) amortized otherwise
+	 */
+	public boolean offer(int key)
+	{
+		if(this.heap.size() < this.k)
+		{
+			this.heap.insert(~key);
+			return true;
+		}
+		if(key >= threshold()) // can't be one of the k smallest
+			return false;
+		this.heap.deleteMin();
+		this.heap.insert(~key);
+		return true;
+	}
+
+	/**
+	 * public int threshold()
+	 *
+	 * Returns the largest candidate, or Integer.MAX_VALUE if there are no candidates.
+	 * While the accumulator is full, only keys smaller than the threshold are accepted.
+	 * Time Complexity: O(1)
+	 */
+	public int threshold()
+	{
+		FibonacciHeap.HeapNode largest = this.heap.findMin();
+		return largest == null ? Integer.MAX_VALUE : ~largest.getKey();
+	}
+
+	/**
+	 * public void merge(TopKAccumulator other)
+	 *
+	 * Melds the candidates of other into this accumulator, and deletes the largest ones
+	 * until at most k are left (with FibonacciHeap.pollMin, which consolidates lazily).
+	 * other must not be used afterwards.
+	 * Time Complexity: O(r + e*log(k + other.k)) amortized, r is the number of roots of the melded heaps
+	 * (at most k + other.k) and e is the number of deleted candidates
+	 */
+	public void merge(TopKAccumulator other)
+	{
+		this.heap.meld(other.heap);
+		other.heap = new FibonacciHeap();
+		int excess = this.heap.size() - this.k;
+		if(excess <= 0)
+			return;
+		if(this.trimmed.length < excess)
+			this.trimmed = new int[excess];
+		this.heap.pollMin(excess, this.trimmed);
+	}
+
+	/**
+	 * public int[] snapshot()
+	 *
+	 * Returns the current candidates (the smallest keys seen so far) in ascending order,
+	 * without changing the accumulator.
+	 * Time Complexity: O(k log k)
+	 */
+	public int[] snapshot()
+	{
+		int[] res = new int[this.heap.size()];
+		if(res.length == 0)
+			return res;
+		FibonacciHeap.MinIterator it = new FibonacciHeap.MinIterator(this.heap);
+		for(int i = res.length - 1; i >= 0; i--) // the heap returns the largest candidate first
+			res[i] = ~it.nextInt();
+		return res;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of candidates (at most k).
+	 * Time Complexity: O(1)
+	 */
+	public int size()
+	{
+		return this.heap.size();
+	}
+}